@@ -0,0 +1,259 @@
+/*
+ *  Copyright (c) 2013 James Buncle
+ * 
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ * 
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ * 
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ * 
+ */
+package com.jbuncle.exceltomysql;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.poi.ss.usermodel.Sheet;
+
+/**
+ * The columns of a sheet, by sheet column index. Column names are hash
+ * indexed and de-duplicated by appending a counter, so "Value" repeated
+ * becomes "Value", "Value1", "Value2"...
+ *
+ * @author James Buncle
+ */
+public class ColumnSchema {
+
+    /**
+     * Column names by sheet column, null for skipped columns
+     */
+    private final List<String> names;
+    private final List<ExcelType> types;
+    /**
+     * Column name to sheet column
+     */
+    private final Map<String, Integer> columns;
+    /**
+     * Next de-duplication suffix to try for each repeated name
+     */
+    private final Map<String, Integer> suffixes;
+    private volatile int[] acceptedColumns;
+
+    public ColumnSchema() {
+        this.names = new ArrayList<String>();
+        this.types = new ArrayList<ExcelType>();
+        this.columns = new HashMap<String, Integer>();
+        this.suffixes = new HashMap<String, Integer>();
+    }
+
+    /**
+     * @param name a column name
+     * @return the name if no column has it yet, otherwise the name with the
+     * lowest numeric suffix no column has yet
+     */
+    public String getUniqueName(String name) {
+        if (!columns.containsKey(name)) {
+            return name;
+        }
+        final Integer next = suffixes.get(name);
+        int suffix = next == null ? 1 : next;
+        while (columns.containsKey(name + suffix)) {
+            suffix++;
+        }
+        suffixes.put(name, suffix);
+        return name + suffix;
+    }
+
+    /**
+     * Adds the next sheet column, de-duplicating the name if already used
+     *
+     * @param name the column name
+     * @return the name given to the column
+     */
+    public String addColumn(String name) {
+        final String uniqueName = getUniqueName(name);
+        columns.put(uniqueName, names.size());
+        names.add(uniqueName);
+        types.add(null);
+        acceptedColumns = null;
+        return uniqueName;
+    }
+
+    /**
+     * Adds the next sheet column if the filter accepts it, otherwise adds it as
+     * a skipped column. A de-duplicated name must also be accepted
+     *
+     * @param sheetName name of the sheet, as given in the workbook
+     * @param name the cleaned up column name
+     * @param filter the sheet filter
+     */
+    public void addColumn(String sheetName, String name, SheetFilter filter) {
+        final String columnName = name.replaceAll("\n", " ");
+        if (filter.accept(sheetName, columnName)) {
+            final String uniqueName = getUniqueName(columnName);
+            //Renamed duplicates must also be accepted by their new name
+            if (uniqueName.equals(columnName) || filter.accept(sheetName, uniqueName)) {
+                addColumn(uniqueName);
+                return;
+            }
+        }
+        addSkippedColumn();
+    }
+
+    /**
+     * Adds the next column of a POI sheet if the filter accepts it, otherwise
+     * adds it as a skipped column. A de-duplicated name must also be accepted
+     *
+     * @param sheet the sheet
+     * @param name the cleaned up column name
+     * @param filter the sheet filter
+     */
+    public void addColumn(Sheet sheet, String name, SheetFilter filter) {
+        final String columnName = name.replaceAll("\n", " ");
+        if (filter.accept(sheet, columnName)) {
+            final String uniqueName = getUniqueName(columnName);
+            //Renamed duplicates must also be accepted by their new name
+            if (uniqueName.equals(columnName) || filter.accept(sheet, uniqueName)) {
+                addColumn(uniqueName);
+                return;
+            }
+        }
+        addSkippedColumn();
+    }
+
+    /**
+     * Adds the next sheet column as one which isn't loaded
+     */
+    public void addSkippedColumn() {
+        names.add(null);
+        types.add(null);
+    }
+
+    /**
+     * Sets the type of a column, skipped columns are ignored
+     *
+     * @param column sheet column index
+     * @param type the column type
+     */
+    public void setType(int column, ExcelType type) {
+        if (column < names.size() && names.get(column) != null) {
+            types.set(column, type);
+            acceptedColumns = null;
+        }
+    }
+
+    /**
+     * @return number of sheet columns, including skipped columns
+     */
+    public int size() {
+        return names.size();
+    }
+
+    public String getName(int column) {
+        return names.get(column);
+    }
+
+    public ExcelType getType(int column) {
+        return types.get(column);
+    }
+
+    /**
+     * @param name column name
+     * @return the sheet column of the named column if it has a type, otherwise
+     * -1
+     */
+    public int indexOf(String name) {
+        final Integer column = columns.get(name);
+        if (column == null || types.get(column) == null) {
+            return -1;
+        }
+        return column;
+    }
+
+    /**
+     * @return the sheet columns with a name and type, in sheet order. The
+     * array is shared and must not be modified. It is safe to call from
+     * several threads once the schema is no longer being changed
+     */
+    public int[] getAcceptedColumns() {
+        int[] accepted = acceptedColumns;
+        if (accepted == null) {
+            int count = 0;
+            final int[] columns = new int[names.size()];
+            for (int column = 0; column < names.size(); column++) {
+                if (names.get(column) != null && types.get(column) != null) {
+                    columns[count++] = column;
+                }
+            }
+            accepted = new int[count];
+            System.arraycopy(columns, 0, accepted, 0, count);
+            //Only publish the array once it is filled
+            acceptedColumns = accepted;
+        }
+        return accepted;
+    }
+
+    /**
+     * Generates a MySQL table create statement which is capable of holding the
+     * accepted columns, with an auto increment primary key named after the
+     * live table
+     *
+     * @param table the table to create
+     * @param tableName the live table name, the same as table unless loading
+     * into a shadow table
+     * @return the MySQL Table create statement, or null if there are no
+     * columns
+     */
+    public String getCreateStatement(final String table, final String tableName) {
+        if (size() < 1) {
+            return null;
+        }
+        final StringBuilder create = new StringBuilder();
+        create.append("CREATE TABLE IF NOT EXISTS `").append(table).append("` (\n");
+        //auto add a primary key
+        create.append("\t`").append(tableName).append("ID` int(11) NOT NULL AUTO_INCREMENT, \n");
+
+        for (final int column : getAcceptedColumns()) {
+            create.append("\t`").append(getName(column)).append("` ").append(getType(column).getMySqlType()).append(" DEFAULT NULL, \n");
+        }
+        create.append("\tPRIMARY KEY (`").append(tableName).append("ID`)\n");
+        create.append(");\n");
+        return create.toString();
+    }
+
+    /**
+     * Generates a single statement adding all of the given secondary indexes,
+     * so the table is only rebuilt once
+     *
+     * @param table the table to alter
+     * @param columnNames names of the columns to index
+     * @return the ALTER TABLE statement, or null if there are no indexes
+     */
+    public String getAddIndexStatement(final String table, final Collection<String> columnNames) {
+        if (columnNames.isEmpty()) {
+            return null;
+        }
+        final StringBuilder alter = new StringBuilder();
+        alter.append("ALTER TABLE `").append(table).append("` ");
+        for (String columnName : columnNames) {
+            alter.append(Utils.getAddIndexClause(columnName, getType(indexOf(columnName)))).append(", ");
+        }
+        alter.setLength(alter.length() - 2);
+        alter.append(";");
+        return alter.toString();
+    }
+}
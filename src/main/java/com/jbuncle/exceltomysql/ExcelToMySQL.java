@@ -22,13 +22,11 @@
  */
 package com.jbuncle.exceltomysql;
 
+import java.io.File;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.text.SimpleDateFormat;
-import java.util.Map.Entry;
 import java.util.*;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 import org.apache.poi.ss.usermodel.*;
 
 /**
@@ -38,22 +36,45 @@ import org.apache.poi.ss.usermodel.*;
 public class ExcelToMySQL {
 
     private final SheetFilter filter;
+    /**
+     * Column paths {sheet}.{column} given a secondary index after loading
+     */
+    private final Set<String> indexes;
     private boolean strict;
+    private LoadMode loadMode;
 
     public ExcelToMySQL() {
         filter = new SheetPathFilter();
+        indexes = new TreeSet<String>();
         strict = true;
+        loadMode = LoadMode.REPLACE;
     }
 
     public ExcelToMySQL(String... allowedPaths) {
         filter = new SheetPathFilter(allowedPaths);
+        indexes = new TreeSet<String>();
         strict = true;
+        loadMode = LoadMode.REPLACE;
     }
 
     public void setStrict(boolean strict) {
         this.strict = strict;
     }
 
+    public void setLoadMode(LoadMode loadMode) {
+        this.loadMode = loadMode;
+    }
+
+    /**
+     * Adds a secondary index, built once the sheet's data is loaded. Loading
+     * the sheet fails if it has no such column
+     *
+     * @param columnPath column path in the form {sheet}.{column}
+     */
+    public void addIndex(String columnPath) {
+        indexes.add(columnPath);
+    }
+
     public void addWorkbook(Connection conn, Workbook workbook) throws SQLException {
         final int numberOfSheets = workbook.getNumberOfSheets();
         for (int sheetIndex = 0; sheetIndex < numberOfSheets; sheetIndex++) {
@@ -64,28 +85,49 @@ public class ExcelToMySQL {
         }
     }
 
+    /**
+     * Loads a workbook file. Sheets of .xlsx workbooks are streamed with
+     * {@link XlsxReader} rather than loading the workbook object model
+     *
+     * @param conn
+     * @param file a .xls or .xlsx workbook
+     * @throws SQLException
+     * @throws IOException
+     */
+    public void addWorkbook(Connection conn, File file) throws SQLException, IOException {
+        if (!file.getName().endsWith(".xlsx")) {
+            final Workbook workbook = Utils.createWorkbook(file);
+            if (workbook == null) {
+                throw new IllegalArgumentException("Not an .xls or .xlsx workbook: " + file);
+            }
+            addWorkbook(conn, workbook);
+            return;
+        }
+        final XlsxReader workbook = new XlsxReader(file);
+        try {
+            for (final String sheetName : workbook.getSheetNames()) {
+                if (filter.accept(sheetName)) {
+                    addTableFromSheet(conn, workbook, sheetName);
+                }
+            }
+        } finally {
+            workbook.close();
+        }
+    }
+
     public void addTableFromSheet(final Connection conn, final Sheet sheet) throws SQLException {
         final int numRows = sheet.getPhysicalNumberOfRows();
         if (numRows < 2) {
             //Not enough or can't determine
         }
-        final List<Entry<String, ExcelType>> types = extractTypes(sheet);
+        final ColumnSchema types = extractTypes(sheet);
         final String tableName = Utils.cleanUp(sheet.getSheetName());
-        {
-            final String dropStatement = "DROP TABLE IF EXISTS `" + tableName + "`;";
-            conn.createStatement().execute(dropStatement);
-            System.out.println(dropStatement);
-        }
-        {
-            final String createStatement = getCreateTable(tableName, types);
-            System.out.println(createStatement);
-            conn.createStatement().execute(createStatement);
-        }
+        final String loadTableName = createLoadTable(conn, tableName, types);
 
         int rowCount = 0;
         for (final Row row : new IteratorWrapper<Row>(sheet.iterator())) {
             if (rowCount > 0) {
-                final String insert = createInsert(tableName, types, row);
+                final String insert = createInsert(loadTableName, types, row);
                 if (insert != null) {
                     System.out.println(insert);
                     conn.createStatement().execute(insert);
@@ -93,78 +135,98 @@ public class ExcelToMySQL {
             }
             rowCount++;
         }
+        finishLoadTable(conn, loadTableName, tableName, types);
     }
 
-    private String createInsert(final String tableName, final List<Entry<String, ExcelType>> types, final Row row) {
-        //Iterate
-        final FormulaEvaluator evaluator = row.getSheet().getWorkbook().getCreationHelper().createFormulaEvaluator();
-        final Map<String, String> colVals = new HashMap<String, String>();
+    private void addTableFromSheet(final Connection conn, final XlsxReader workbook, final String sheetName) throws SQLException, IOException {
+        final XlsxSheetToMySQL sheet = new XlsxSheetToMySQL(workbook, sheetName, filter);
+        sheet.setStrict(strict);
+        final ColumnSchema types = sheet.getColumns();
+        final String tableName = sheet.getTableName();
+        final String loadTableName = createLoadTable(conn, tableName, types);
+        sheet.addDataToDatabase(conn, loadTableName);
+        finishLoadTable(conn, loadTableName, tableName, types);
+    }
 
-        int columnCount = 0;
-        for (Entry<String, ExcelType> sourceType : types) {
-            if (isSet(sourceType)) {
-                Cell cell = row.getCell(columnCount);
-                if (cell != null) {
-                    cell = evaluator.evaluateInCell(cell);
-                    try {
-                        final String value;
-                        switch (sourceType.getValue()) {
-                            case DATE:
-                                value = "'" + new SimpleDateFormat("yyyy-MM-dd HH:mm").format(getCellValue(cell)) + "'";
-                                colVals.put(sourceType.getKey(), value);
-                                break;
-                            case NUMERIC:
-                                value = String.valueOf(getCellValue(cell));
-                                colVals.put(sourceType.getKey(), value);
-                                break;
-                            case BOOLEAN:
-                                value = String.valueOf(cell.getBooleanCellValue());
-                                colVals.put(sourceType.getKey(), value);
-                                break;
-                            case STRING:
-                                value = String.valueOf(getCellValue(cell)).replaceAll("'", "\\\\'");
-                                if (!value.isEmpty()) {
-                                    colVals.put(sourceType.getKey(), "'" + value + "'");
-                                }
-                                break;
-                        }
-                    } catch (Exception ex) {
-                        if (strict) {
-                            throw new RuntimeException("Failed to process cell value: " + getCellValue(cell) + ", of column:row " + columnCount + ":" + row.getRowNum()
-                                    + ", expecting type: " + sourceType.getValue().toString(), ex);
-                        }
-                    }
-                }
-            }
-            columnCount++;
+    /**
+     * Drops and creates the table a sheet is loaded into, published tables are
+     * loaded into a shadow table first
+     *
+     * @return the name of the table to load
+     */
+    private String createLoadTable(final Connection conn, final String tableName, final ColumnSchema types) throws SQLException {
+        checkIndexes(tableName, types);
+        final String loadTableName = loadMode == LoadMode.PUBLISH ? Utils.getLoadingTableName(tableName) : tableName;
+        {
+            final String dropStatement = "DROP TABLE IF EXISTS `" + loadTableName + "`;";
+            conn.createStatement().execute(dropStatement);
+            System.out.println(dropStatement);
         }
-        return createInsertStatement(colVals, tableName);
+        {
+            final String createStatement = types.getCreateStatement(loadTableName, tableName);
+            System.out.println(createStatement);
+            conn.createStatement().execute(createStatement);
+        }
+        return loadTableName;
     }
 
-    private String createInsertStatement(final Map<String, String> colVals, final String tableName) throws RuntimeException {
-        final StringBuilder columns = new StringBuilder();
-        final StringBuilder values = new StringBuilder();
-        if (colVals.isEmpty()) {
-            return null;
+    /**
+     * Builds the indexes of a loaded table, and publishes it if loaded into a
+     * shadow table
+     */
+    private void finishLoadTable(final Connection conn, final String loadTableName, final String tableName, final ColumnSchema types) throws SQLException {
+        final String indexStatement = types.getAddIndexStatement(loadTableName, getIndexedColumns(tableName, types));
+        if (indexStatement != null) {
+            System.out.println(indexStatement);
+            conn.createStatement().execute(indexStatement);
         }
-        for (Entry<String, String> colVal : colVals.entrySet()) {
-            columns.append("`").append(colVal.getKey()).append("`").append(",");
-            try {
-                values.append(colVal.getValue()).append(",");
-            } catch (Exception ex) {
-                if (strict) {
-                    throw new RuntimeException("Failed to process cell value: " + colVal.getValue() + ", of column:row " + colVal.getKey()
-                            + ", expecting type: " + colVal.getValue(), ex);
-                } else {
-                    values.append("NULL").append(",");
-                    Logger.getLogger(ExcelToMySQL.class.getName()).log(Level.SEVERE, "Failed to process cell value: " + colVal.getValue() + ", of column:row " + colVal.getKey() + ":" + ", expecting type: " + colVal.getValue(), ex);
+        if (loadMode == LoadMode.PUBLISH) {
+            Utils.publishTable(conn, loadTableName, tableName);
+        }
+    }
+
+    private String createInsert(final String tableName, final ColumnSchema types, final Row row) {
+        //Iterate
+        final FormulaEvaluator evaluator = row.getSheet().getWorkbook().getCreationHelper().createFormulaEvaluator();
+        final Map<String, String> colVals = new LinkedHashMap<String, String>();
+
+        for (final int column : types.getAcceptedColumns()) {
+            final String columnName = types.getName(column);
+            final ExcelType type = types.getType(column);
+            Cell cell = row.getCell(column);
+            if (cell != null) {
+                cell = evaluator.evaluateInCell(cell);
+                try {
+                    final String value;
+                    switch (type) {
+                        case DATE:
+                            value = Utils.toSqlDate((Date) getCellValue(cell));
+                            colVals.put(columnName, value);
+                            break;
+                        case NUMERIC:
+                            value = String.valueOf(getCellValue(cell));
+                            colVals.put(columnName, value);
+                            break;
+                        case BOOLEAN:
+                            value = String.valueOf(cell.getBooleanCellValue());
+                            colVals.put(columnName, value);
+                            break;
+                        case STRING:
+                            value = String.valueOf(getCellValue(cell));
+                            if (!value.isEmpty()) {
+                                colVals.put(columnName, Utils.toSqlString(value));
+                            }
+                            break;
+                    }
+                } catch (Exception ex) {
+                    if (strict) {
+                        throw new RuntimeException("Failed to process cell value: " + getCellValue(cell) + ", of column:row " + column + ":" + row.getRowNum()
+                                + ", expecting type: " + type.toString(), ex);
+                    }
                 }
             }
         }
-        columns.deleteCharAt(columns.length() - 1);
-        values.deleteCharAt(values.length() - 1);
-
-        return "INSERT INTO `" + tableName + "` (" + columns + ") VALUES (" + values + ");";
+        return Utils.getInsertStatement(tableName, colVals);
     }
 
     private static Object getCellValue(Cell cell) {
@@ -183,57 +245,24 @@ public class ExcelToMySQL {
         }
     }
 
-    private static boolean isSet(Entry<String, ExcelType> entry) {
-        return entry != null && entry.getKey() != null && entry.getValue() != null;
-    }
-
-    private void addColumnName(List<Entry<String, ExcelType>> columns, int cellCount, String columnName, Sheet sheet) {
-        columnName = columnName.replaceAll("\n", " ");
-        if (filter.accept(sheet, columnName)) {
-            //Doesn't exist yet
-            if (!Utils.typesContain(columns, columnName)) {
-                columns.add(cellCount, new AbstractMap.SimpleEntry<String, ExcelType>(columnName, null));
-
-            } else {
-                //Already contains column
-                int tempIndex = 1;
-
-                String tempCol = columnName + tempIndex;
-                while (Utils.typesContain(columns, tempCol)) {
-                    //Contains suggested value, increments
-                    tempCol = columnName + tempIndex;
-                    tempIndex++;
-                }
-                addColumnName(columns, cellCount, tempCol, sheet);
-            }
-        } else {
-            columns.add(cellCount, null);
-        }
-    }
-
-    private List<Entry<String, ExcelType>> extractTypes(Sheet sheet) {
+    private ColumnSchema extractTypes(Sheet sheet) {
 
-        final ArrayList<Entry<String, ExcelType>> columns = new ArrayList<Entry<String, ExcelType>>();
+        final ColumnSchema columns = new ColumnSchema();
         int rowCount = 0;
         for (final Row row : new IteratorWrapper<Row>(sheet.iterator())) {
             if (rowCount < 1) {
-                int cellCount = 0;
                 //First row - get column names
                 final Iterator<Cell> cellIterator = row.cellIterator();
                 for (final Cell cell : new IteratorWrapper<Cell>(cellIterator)) {
                     final String columnName = Utils.cleanUp(cell.getStringCellValue());
-                    addColumnName(columns, cellCount, columnName, sheet);
-                    cellCount++;
+                    columns.addColumn(sheet, columnName, filter);
                 }
             } else if (rowCount < 2) {
                 int cellCount = 0;
                 //Second row - work out column type based on these values
                 final Iterator<Cell> cellIterator = row.cellIterator();
                 for (final Cell cell : new IteratorWrapper<Cell>(cellIterator)) {
-                    Entry<String, ExcelType> type = columns.get(cellCount);
-                    if (type != null) {
-                        type.setValue(Utils.excelTypeToMySql(cell));
-                    }
+                    columns.setType(cellCount, Utils.excelTypeToMySql(cell));
                     cellCount++;
                 }
             }
@@ -243,23 +272,28 @@ public class ExcelToMySQL {
 
     }
 
-    private static String getCreateTable(final String tableName, final List<Entry<String, ExcelType>> types) {
-
-        if (types.size() < 1) {
-            return null;
+    /**
+     * Fails if an index is declared for the sheet on a column it doesn't load
+     */
+    private void checkIndexes(final String tableName, final ColumnSchema types) {
+        final String prefix = tableName + ".";
+        for (String index : indexes) {
+            if (index.startsWith(prefix) && types.indexOf(index.substring(prefix.length())) < 0) {
+                throw new IllegalArgumentException("Unknown index column: " + index);
+            }
         }
-        StringBuilder create = new StringBuilder();
-        create.append("CREATE TABLE IF NOT EXISTS `").append(tableName).append("` (\n");
-        //auto add a primary key
-        create.append("\t`").append(tableName).append("ID` int(11) NOT NULL AUTO_INCREMENT, \n");
+    }
 
-        for (Entry<String, ExcelType> entry : types) {
-            if (isSet(entry)) {
-                create.append("\t`").append(entry.getKey()).append("` ").append(entry.getValue().getMySqlType()).append(" DEFAULT NULL, \n");
+    /**
+     * @return the names of the sheet's columns given a secondary index
+     */
+    private List<String> getIndexedColumns(final String tableName, final ColumnSchema types) {
+        final List<String> columnNames = new ArrayList<String>();
+        for (final int column : types.getAcceptedColumns()) {
+            if (indexes.contains(tableName + "." + types.getName(column))) {
+                columnNames.add(types.getName(column));
             }
         }
-        create.append("\tPRIMARY KEY (`").append(tableName).append("ID`)\n");
-        create.append(");\n");
-        return create.toString();
+        return columnNames;
     }
 }
@@ -0,0 +1,254 @@
+/*
+ *  Copyright (c) 2013 James Buncle
+ * 
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ * 
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ * 
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ * 
+ */
+package com.jbuncle.exceltomysql;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Properties;
+
+/**
+ * Command line entry point, imports workbooks using the settings of a config
+ * profile:
+ *
+ * <pre>
+ * java -jar excel-to-mysql.jar profile.properties workbook.xlsx...
+ * </pre>
+ *
+ * The profile holds host, port, schema, user, password, paths (comma
+ * separated {sheet}.{column} paths for {@link SheetPathFilter}), indexes
+ * (comma separated {sheet}.{column} paths), strict and loadMode.
+ *
+ * Setting the system property exceltomysql.timeJvmStart to true also reports
+ * the time from JVM start to main, which starts the platform management
+ * beans. The JVM's own -Xlog:startuptime and -Xlog:class+load logging time
+ * start up without them.
+ *
+ * Running with --train imports the bundled training workbooks into a
+ * connection which executes nothing, to load the classes of a normal run when
+ * building a class data sharing archive.
+ *
+ * @author James Buncle
+ */
+public class Main {
+
+    /**
+     * Classes used by every import, loaded up front so that class loading is
+     * timed on its own
+     */
+    private static final String[] STARTUP_CLASSES = {
+        "com.mysql.jdbc.Driver",
+        "com.jbuncle.exceltomysql.ExcelToMySQL",
+        "com.jbuncle.exceltomysql.XlsxReader",
+        "com.jbuncle.exceltomysql.XlsxSheetToMySQL"
+    };
+    /**
+     * Classes only used to load .xls workbooks
+     */
+    private static final String[] XLS_CLASSES = {
+        "org.apache.poi.hssf.usermodel.HSSFWorkbook"
+    };
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 1 && args[0].equals("--train")) {
+            train();
+            return;
+        }
+        if (args.length < 2) {
+            System.err.println("Usage: java -jar excel-to-mysql.jar <profile.properties> <workbook>...");
+            System.exit(1);
+        }
+        final long mainStart = System.currentTimeMillis();
+        if (Boolean.getBoolean("exceltomysql.timeJvmStart")) {
+            System.err.println("JVM start: " + (mainStart - getJvmStartTime()) + "ms");
+        }
+        loadClasses(STARTUP_CLASSES);
+        for (int i = 1; i < args.length; i++) {
+            if (!args[i].endsWith(".xlsx")) {
+                loadClasses(XLS_CLASSES);
+                break;
+            }
+        }
+        final long connectStart = System.currentTimeMillis();
+        System.err.println("Class loading: " + (connectStart - mainStart) + "ms");
+
+        final Properties profile = loadProfile(new File(args[0]));
+        final ExcelToMySQL excelToMySQL = createExcelToMySQL(profile);
+        final Connection conn = Utils.getConnection(
+                getRequired(profile, "host"),
+                Integer.parseInt(profile.getProperty("port", "3306")),
+                getRequired(profile, "schema"),
+                getRequired(profile, "user"),
+                profile.getProperty("password", ""));
+        try {
+            System.err.println("Connecting: " + (System.currentTimeMillis() - connectStart) + "ms");
+            for (int i = 1; i < args.length; i++) {
+                final File file = new File(args[i]);
+                final long start = System.currentTimeMillis();
+                excelToMySQL.addWorkbook(conn, file);
+                System.err.println("Imported " + file + ": " + (System.currentTimeMillis() - start) + "ms");
+            }
+        } finally {
+            conn.close();
+        }
+    }
+
+    /**
+     * @param file the profile properties file
+     * @return the profile
+     * @throws IOException
+     */
+    public static Properties loadProfile(File file) throws IOException {
+        final Properties profile = new Properties();
+        final InputStream in = new FileInputStream(file);
+        try {
+            profile.load(in);
+        } finally {
+            in.close();
+        }
+        return profile;
+    }
+
+    /**
+     * Creates an importer with the filter paths, indexes, strict mode and load
+     * mode of the profile
+     *
+     * @param profile
+     * @return the configured importer
+     */
+    public static ExcelToMySQL createExcelToMySQL(Properties profile) {
+        final String paths = profile.getProperty("paths", "").trim();
+        final ExcelToMySQL excelToMySQL = paths.isEmpty()
+                ? new ExcelToMySQL()
+                : new ExcelToMySQL(split(paths));
+        excelToMySQL.setStrict(Boolean.parseBoolean(profile.getProperty("strict", "true").trim()));
+        excelToMySQL.setLoadMode(LoadMode.valueOf(profile.getProperty("loadMode", LoadMode.REPLACE.name()).trim().toUpperCase()));
+        final String indexes = profile.getProperty("indexes", "").trim();
+        if (!indexes.isEmpty()) {
+            for (String index : split(indexes)) {
+                excelToMySQL.addIndex(index);
+            }
+        }
+        return excelToMySQL;
+    }
+
+    private static String[] split(String list) {
+        final String[] values = list.split(",");
+        for (int i = 0; i < values.length; i++) {
+            values[i] = values[i].trim();
+        }
+        return values;
+    }
+
+    private static String getRequired(Properties profile, String name) {
+        final String value = profile.getProperty(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing profile setting: " + name);
+        }
+        return value.trim();
+    }
+
+    private static void loadClasses(String[] classNames) throws ClassNotFoundException {
+        for (String className : classNames) {
+            Class.forName(className);
+        }
+    }
+
+    /**
+     * Only called when asked for, as the management beans are slow to start
+     * and load many classes
+     */
+    private static long getJvmStartTime() {
+        return ManagementFactory.getRuntimeMXBean().getStartTime();
+    }
+
+    /**
+     * Runs small imports of both workbook formats without a database
+     */
+    private static void train() throws Exception {
+        loadClasses(STARTUP_CLASSES);
+        loadClasses(XLS_CLASSES);
+        final ExcelToMySQL excelToMySQL = new ExcelToMySQL();
+        excelToMySQL.setLoadMode(LoadMode.PUBLISH);
+        for (String name : new String[]{"training.xls", "training.xlsx"}) {
+            final File file = File.createTempFile("training", name.substring(name.lastIndexOf('.')));
+            try {
+                copyResource(name, file);
+                excelToMySQL.addWorkbook(createDiscardingConnection(), file);
+            } finally {
+                file.delete();
+            }
+        }
+    }
+
+    private static void copyResource(String name, File file) throws IOException {
+        final InputStream in = Main.class.getResourceAsStream(name);
+        if (in == null) {
+            throw new IOException("Missing resource: " + name);
+        }
+        try {
+            final OutputStream out = new FileOutputStream(file);
+            try {
+                final byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return a connection whose statements execute nothing
+     */
+    private static Connection createDiscardingConnection() {
+        final InvocationHandler statementHandler = new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getReturnType() == boolean.class ? Boolean.FALSE : null;
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(Main.class.getClassLoader(), new Class<?>[]{Connection.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getReturnType() == Statement.class) {
+                    return Proxy.newProxyInstance(Main.class.getClassLoader(), new Class<?>[]{Statement.class}, statementHandler);
+                }
+                return method.getReturnType() == boolean.class ? Boolean.FALSE : null;
+            }
+        });
+    }
+}
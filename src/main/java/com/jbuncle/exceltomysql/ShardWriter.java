@@ -0,0 +1,200 @@
+/*
+ *  Copyright (c) 2013 James Buncle
+ * 
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ * 
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ * 
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ * 
+ */
+package com.jbuncle.exceltomysql;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Executes statements against several connections at once, using one thread
+ * per connection. Each thread takes its statements from a bounded queue, so
+ * statements are executed while later ones are still being generated. Once
+ * any connection fails the others stop before their next statement.
+ *
+ * @author James Buncle
+ */
+class ShardWriter {
+
+    /**
+     * Marks the end of a connection's statements, compared by identity
+     */
+    private static final String END = new String("END");
+    private final List<BlockingQueue<String>> queues;
+    private final List<Future<Void>> results;
+    private final AtomicBoolean failed;
+
+    /**
+     * @param conns connections to execute the statements against
+     * @param capacity maximum number of statements queued for each connection
+     */
+    ShardWriter(final List<Connection> conns, final int capacity) {
+        this.queues = new ArrayList<BlockingQueue<String>>(conns.size());
+        this.results = new ArrayList<Future<Void>>(conns.size());
+        this.failed = new AtomicBoolean(false);
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, conns.size()));
+        try {
+            for (final Connection conn : conns) {
+                final BlockingQueue<String> queue = new LinkedBlockingQueue<String>(capacity);
+                queues.add(queue);
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        try {
+                            String statement = queue.take();
+                            while (statement != END && !failed.get()) {
+                                conn.createStatement().execute(statement);
+                                statement = queue.take();
+                            }
+                        } catch (Exception ex) {
+                            failed.set(true);
+                            throw ex;
+                        }
+                        return null;
+                    }
+                }));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Queues a statement for a connection, waiting while its queue is full
+     *
+     * @param index index of the connection
+     * @param statement the statement to execute
+     * @return false once any connection has failed, as further statements
+     * won't be executed
+     */
+    boolean add(final int index, final String statement) {
+        final BlockingQueue<String> queue = queues.get(index);
+        try {
+            while (!queue.offer(statement, 100, TimeUnit.MILLISECONDS)) {
+                if (failed.get()) {
+                    return false;
+                }
+            }
+        } catch (InterruptedException ex) {
+            //Reported by finish
+            Thread.currentThread().interrupt();
+            failed.set(true);
+            return false;
+        }
+        return !failed.get();
+    }
+
+    /**
+     * Waits for every connection to execute its queued statements, or to stop
+     * once any connection has failed. Statements already executed are not
+     * rolled back, so a failure can leave partial loads on any of the
+     * connections.
+     *
+     * @throws SQLException the first failure of any of the connections, with
+     * the failures of the others suppressed
+     */
+    void finish() throws SQLException {
+        boolean interrupted = Thread.interrupted();
+        if (interrupted) {
+            failed.set(true);
+        }
+        for (final BlockingQueue<String> queue : queues) {
+            while (true) {
+                try {
+                    if (failed.get()) {
+                        //Stopped connections no longer take from their queues
+                        queue.clear();
+                    }
+                    if (queue.offer(END, 100, TimeUnit.MILLISECONDS)) {
+                        break;
+                    }
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                    failed.set(true);
+                }
+            }
+        }
+
+        //Wait for every connection to be released before reporting a failure
+        Throwable failure = null;
+        for (final Future<Void> result : results) {
+            while (true) {
+                try {
+                    result.get();
+                    break;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                    failed.set(true);
+                } catch (ExecutionException ex) {
+                    if (failure == null) {
+                        failure = ex.getCause();
+                    } else {
+                        failure.addSuppressed(ex.getCause());
+                    }
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+            if (failure == null) {
+                throw new SQLException("Interrupted while executing statements");
+            }
+        }
+        if (failure instanceof SQLException) {
+            throw (SQLException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    /**
+     * Stops every connection before its next statement, and waits for them
+     * to be released
+     *
+     * @param cause the failure to generate the statements, which the
+     * connections' failures are added to as suppressed
+     */
+    void cancel(final Throwable cause) {
+        failed.set(true);
+        try {
+            finish();
+        } catch (SQLException ex) {
+            cause.addSuppressed(ex);
+        } catch (RuntimeException ex) {
+            cause.addSuppressed(ex);
+        }
+    }
+}
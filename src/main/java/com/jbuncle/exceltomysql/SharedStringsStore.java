@@ -0,0 +1,325 @@
+/*
+ *  Copyright (c) 2013 James Buncle
+ * 
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ * 
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ * 
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ * 
+ */
+package com.jbuncle.exceltomysql;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Compact store for the shared strings table of a .xlsx workbook. Strings are
+ * held off the heap as UTF-8 bytes with an int offset index, either in memory
+ * mapped temporary files or in direct buffers. Strings are only decoded when
+ * requested.
+ *
+ * @author James Buncle
+ */
+public class SharedStringsStore implements Closeable {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /**
+     * The strings' UTF-8 bytes
+     */
+    private final Segment data;
+    /**
+     * Start of each string in data, the end of string i is at offset i + 1
+     */
+    private final Segment offsets;
+    private ByteBuffer dataBuffer;
+    private ByteBuffer offsetsBuffer;
+    private int count;
+    private char highSurrogate;
+    private boolean finished;
+
+    public SharedStringsStore() throws IOException {
+        this(1024);
+    }
+
+    /**
+     * Creates a store which keeps the strings in direct memory. The buffers
+     * double as they fill, so while growing the store can briefly use three
+     * times the UTF-8 size of the strings. Direct memory is limited by
+     * -XX:MaxDirectMemorySize, which defaults to the maximum heap size, and
+     * running out fails with an OutOfMemoryError
+     *
+     * @param expectedCount number of strings expected
+     * @throws IOException
+     */
+    public SharedStringsStore(int expectedCount) throws IOException {
+        this.data = new Segment(Math.max(16, expectedCount) * 8);
+        this.offsets = new Segment((Math.max(16, expectedCount) + 1) * 4);
+        start();
+    }
+
+    /**
+     * Creates a store which writes the strings and their offsets to temporary
+     * files in the given directory, and maps them into memory once all strings
+     * are added. Only a small write buffer is held in direct memory
+     *
+     * @param expectedCount number of strings expected
+     * @param directory directory for the temporary files
+     * @throws IOException
+     */
+    public SharedStringsStore(int expectedCount, File directory) throws IOException {
+        this.data = new Segment(".utf8", directory);
+        try {
+            this.offsets = new Segment(".offsets", directory);
+        } catch (IOException ex) {
+            data.close();
+            throw ex;
+        }
+        start();
+    }
+
+    /**
+     * Appends characters to the string currently being added
+     *
+     * @param chars the character buffer
+     * @param start index of the first character to append
+     * @param len number of characters to append
+     * @throws IOException
+     */
+    public void append(char[] chars, int start, int len) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("Shared strings are read only once finished");
+        }
+        final int end = start + len;
+        for (int i = start; i < end; i++) {
+            final char c = chars[i];
+            if (highSurrogate != 0) {
+                final char high = highSurrogate;
+                highSurrogate = 0;
+                if (Character.isLowSurrogate(c)) {
+                    writeCodePoint(Character.toCodePoint(high, c));
+                    continue;
+                }
+                writeCodePoint('?');
+            }
+            if (Character.isHighSurrogate(c)) {
+                highSurrogate = c;
+            } else if (Character.isLowSurrogate(c)) {
+                writeCodePoint('?');
+            } else {
+                writeCodePoint(c);
+            }
+        }
+    }
+
+    /**
+     * Completes the string currently being added
+     *
+     * @throws IOException
+     */
+    public void endString() throws IOException {
+        if (highSurrogate != 0) {
+            highSurrogate = 0;
+            writeCodePoint('?');
+        }
+        if (data.length() > Integer.MAX_VALUE) {
+            throw new IOException("Shared strings table exceeds 2GB");
+        }
+        count++;
+        offsets.reserve(4).putInt((int) data.length());
+    }
+
+    /**
+     * Makes the store read only, mapping the strings into memory if they are
+     * held in files
+     *
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        dataBuffer = data.finish();
+        offsetsBuffer = offsets.finish();
+    }
+
+    /**
+     * @param index index of the string in the shared strings table
+     * @return the decoded string
+     */
+    public String get(int index) {
+        if (!finished) {
+            throw new IllegalStateException("Shared strings are not finished");
+        }
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Shared string " + index + " of " + count);
+        }
+        final int start = offsetsBuffer.getInt(index * 4);
+        final int end = offsetsBuffer.getInt((index + 1) * 4);
+        final byte[] bytes = new byte[end - start];
+        final ByteBuffer view = dataBuffer.duplicate();
+        view.position(start);
+        view.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        dataBuffer = null;
+        offsetsBuffer = null;
+        try {
+            data.close();
+        } finally {
+            offsets.close();
+        }
+    }
+
+    private void start() throws IOException {
+        this.finished = false;
+        offsets.reserve(4).putInt(0);
+    }
+
+    private void writeCodePoint(int codePoint) throws IOException {
+        final ByteBuffer buffer = data.reserve(4);
+        if (codePoint < 0x80) {
+            buffer.put((byte) codePoint);
+        } else if (codePoint < 0x800) {
+            buffer.put((byte) (0xC0 | (codePoint >> 6)));
+            buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+        } else if (codePoint < 0x10000) {
+            buffer.put((byte) (0xE0 | (codePoint >> 12)));
+            buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+            buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+        } else {
+            buffer.put((byte) (0xF0 | (codePoint >> 18)));
+            buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+            buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+            buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+        }
+    }
+
+    /**
+     * Append only byte storage, either a growing direct buffer or a temporary
+     * file written through a small direct buffer
+     */
+    private static final class Segment implements Closeable {
+
+        private static final int FILE_BUFFER_SIZE = 64 * 1024;
+        /**
+         * Temporary file holding the bytes, or null to keep them in memory
+         */
+        private final File file;
+        private final FileChannel channel;
+        private ByteBuffer buffer;
+        /**
+         * Number of bytes already written to the file
+         */
+        private long written;
+
+        Segment(int capacity) {
+            this.file = null;
+            this.channel = null;
+            this.buffer = ByteBuffer.allocateDirect(capacity);
+        }
+
+        Segment(String suffix, File directory) throws IOException {
+            this.file = File.createTempFile("sharedStrings", suffix, directory);
+            try {
+                this.channel = new RandomAccessFile(file, "rw").getChannel();
+            } catch (IOException ex) {
+                file.delete();
+                throw ex;
+            }
+            this.buffer = ByteBuffer.allocateDirect(FILE_BUFFER_SIZE);
+        }
+
+        long length() {
+            return written + buffer.position();
+        }
+
+        /**
+         * @param bytes number of bytes about to be written
+         * @return the buffer to write them to
+         */
+        ByteBuffer reserve(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                if (channel != null) {
+                    flush();
+                } else {
+                    grow();
+                }
+            }
+            return buffer;
+        }
+
+        /**
+         * @return a read only view of the bytes, mapped from the file if there
+         * is one
+         */
+        ByteBuffer finish() throws IOException {
+            if (channel == null) {
+                final ByteBuffer view = buffer.duplicate();
+                view.flip();
+                return view.asReadOnlyBuffer();
+            }
+            flush();
+            buffer = null;
+            final ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, written);
+            channel.close();
+            //The mapping outlives the file where the platform allows it,
+            //otherwise the file is deleted by close
+            file.delete();
+            return mapped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            buffer = null;
+            if (channel != null) {
+                channel.close();
+                file.delete();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void grow() throws IOException {
+            final long capacity = buffer.capacity() * 2L;
+            if (capacity > Integer.MAX_VALUE) {
+                throw new IOException("Shared strings table exceeds 2GB");
+            }
+            final ByteBuffer grown = ByteBuffer.allocateDirect((int) capacity);
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+    }
+}
@@ -33,4 +33,29 @@ public interface SheetFilter {
     public boolean accept(Sheet sheet);
 
     public boolean accept(Sheet sheet, String column);
+
+    /**
+     * Filters streamed .xlsx sheets, which have no {@link Sheet}. Filters
+     * which don't implement this can only be used with workbooks loaded by
+     * POI.
+     *
+     * @param sheetName name of the sheet, as given in the workbook
+     * @return true if the sheet should be loaded
+     */
+    public default boolean accept(String sheetName) {
+        throw new UnsupportedOperationException(getClass().getName() + " can't filter streamed sheets");
+    }
+
+    /**
+     * Filters the columns of streamed .xlsx sheets, which have no
+     * {@link Sheet}. Filters which don't implement this can only be used with
+     * workbooks loaded by POI.
+     *
+     * @param sheetName name of the sheet, as given in the workbook
+     * @param column the cleaned up column name
+     * @return true if the column should be loaded
+     */
+    public default boolean accept(String sheetName, String column) {
+        throw new UnsupportedOperationException(getClass().getName() + " can't filter streamed sheets");
+    }
 }
@@ -47,7 +47,17 @@ public class SheetPathFilter implements SheetFilter {
 
     @Override
     public boolean accept(Sheet sheet) {
-        final String sheetName = Utils.cleanUp(sheet.getSheetName());
+        return accept(sheet.getSheetName());
+    }
+
+    @Override
+    public boolean accept(Sheet sheet, String column) {
+        return accept(sheet.getSheetName(), column);
+    }
+
+    @Override
+    public boolean accept(String name) {
+        final String sheetName = Utils.cleanUp(name);
         for (String str : this.acceptedPaths) {
             if (str.startsWith("*.")
                     || str.equals(sheetName)
@@ -59,8 +69,8 @@ public class SheetPathFilter implements SheetFilter {
     }
 
     @Override
-    public boolean accept(Sheet sheet, String column) {
-        final String sheetName = Utils.cleanUp(sheet.getSheetName());
+    public boolean accept(String name, String column) {
+        final String sheetName = Utils.cleanUp(name);
         //Column name path {sheet}.{column} or {sheet}.*
         for (String str : acceptedPaths) {
             if (str.equals("*.*")) {
@@ -28,6 +28,8 @@ import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
@@ -85,6 +87,10 @@ public class Utils {
         return null;
     }
 
+    /**
+     * @deprecated scans every entry, use {@link ColumnSchema#indexOf(String)}
+     */
+    @Deprecated
     public static boolean typesContain(List<Map.Entry<String, ExcelType>> types, String str) {
         for (Map.Entry<String, ExcelType> entry : types) {
             if (entry != null && entry.getKey().equals(str)) {
@@ -106,4 +112,117 @@ public class Utils {
             conn.createStatement().execute(statement);
         }
     }
+
+    /**
+     * @param date a date cell value
+     * @return the date as a MySQL DATETIME literal
+     */
+    public static String toSqlDate(final Date date) {
+        return "'" + new SimpleDateFormat("yyyy-MM-dd HH:mm").format(date) + "'";
+    }
+
+    /**
+     * @param value a text cell value
+     * @return the value as a quoted MySQL string literal
+     */
+    public static String toSqlString(final String value) {
+        return "'" + value.replaceAll("'", "\\\\'") + "'";
+    }
+
+    /**
+     * @param table the table to insert into
+     * @param colVals column names to MySQL literals, in column order. Columns
+     * without a value are left out and so default to NULL
+     * @return the insert statement, or null if there are no values
+     */
+    public static String getInsertStatement(final String table, final Map<String, String> colVals) {
+        if (colVals.isEmpty()) {
+            return null;
+        }
+        final StringBuilder columns = new StringBuilder();
+        final StringBuilder values = new StringBuilder();
+        for (Map.Entry<String, String> colVal : colVals.entrySet()) {
+            columns.append("`").append(colVal.getKey()).append("`").append(",");
+            values.append(colVal.getValue()).append(",");
+        }
+        columns.deleteCharAt(columns.length() - 1);
+        values.deleteCharAt(values.length() - 1);
+
+        return "INSERT INTO `" + table + "` (" + columns + ") VALUES (" + values + ");";
+    }
+
+    /**
+     * @param tableName name of the live table
+     * @return name of the shadow table a sheet is loaded into before it is
+     * published as the live table
+     */
+    public static String getLoadingTableName(final String tableName) {
+        return tableName + "__loading";
+    }
+
+    /**
+     * @param columnName column to index
+     * @param type type of the column
+     * @return an ALTER TABLE clause adding an index on the column
+     */
+    public static String getAddIndexClause(final String columnName, final ExcelType type) {
+        if (type == ExcelType.STRING) {
+            //Text columns can only be indexed on a prefix
+            return "ADD INDEX `" + columnName + "` (`" + columnName + "`(255))";
+        }
+        return "ADD INDEX `" + columnName + "` (`" + columnName + "`)";
+    }
+
+    /**
+     * Atomically replaces the live table with the loaded shadow table. An
+     * empty live table is created first if there isn't one, so the swap is
+     * always a single RENAME of both tables.
+     *
+     * @param conn
+     * @param loadingTable the loaded shadow table
+     * @param tableName the live table to replace
+     * @throws SQLException
+     */
+    public static void publishTable(final Connection conn, final String loadingTable, final String tableName) throws SQLException {
+        final String oldTable = tableName + "__old";
+        executeStatements(conn,
+                "DROP TABLE IF EXISTS `" + oldTable + "`;",
+                "CREATE TABLE IF NOT EXISTS `" + tableName + "` LIKE `" + loadingTable + "`;",
+                "RENAME TABLE `" + tableName + "` TO `" + oldTable + "`, `" + loadingTable + "` TO `" + tableName + "`;",
+                "DROP TABLE `" + oldTable + "`;");
+    }
+
+    /**
+     * Executes each list of statements against the connection at the same
+     * index, using one thread per connection. Once any connection fails the
+     * others stop before their next statement, and this only returns once
+     * every thread has finished with its connection. Statements already
+     * executed are not rolled back, so a failure can leave partial loads on
+     * any of the connections.
+     *
+     * @param conns connections to execute the statements against
+     * @param statements statements for each connection
+     * @throws SQLException the first failure of any of the connections, with
+     * the failures of the others suppressed
+     */
+    public static void executeStatements(final List<Connection> conns, final List<List<String>> statements) throws SQLException {
+        if (conns.size() != statements.size()) {
+            throw new IllegalArgumentException("Expected statements for " + conns.size() + " connections, got " + statements.size());
+        }
+        //The statements are already held, so the queues needn't be bounded
+        final ShardWriter writer = new ShardWriter(conns, Integer.MAX_VALUE);
+        try {
+            for (int index = 0; index < conns.size(); index++) {
+                for (final String statement : statements.get(index)) {
+                    if (!writer.add(index, statement)) {
+                        break;
+                    }
+                }
+            }
+        } catch (RuntimeException ex) {
+            writer.cancel(ex);
+            throw ex;
+        }
+        writer.finish();
+    }
 }
@@ -28,9 +28,11 @@ import static com.jbuncle.exceltomysql.ExcelType.NUMERIC;
 import static com.jbuncle.exceltomysql.ExcelType.STRING;
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.text.SimpleDateFormat;
-import java.util.Map.Entry;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.*;
 
 /**
@@ -39,9 +41,17 @@ import org.apache.poi.ss.usermodel.*;
  */
 public class WorkhseetToMySQL {
 
+    /**
+     * Maximum number of statements waiting to be written to each shard
+     */
+    private static final int SHARD_QUEUE_CAPACITY = 1000;
     private final Sheet sheet;
-    private final List<Entry<String, ExcelType>> types;
+    private final ColumnSchema types;
     private final String tableName;
+    /**
+     * Columns given a secondary index once the data is loaded
+     */
+    private final Set<String> indexes;
     private int columnOffset;
     /**
      * Tables start (index of columns headings)
@@ -50,12 +60,26 @@ public class WorkhseetToMySQL {
 
     public WorkhseetToMySQL(Sheet sheet) {
         this.sheet = sheet;
-        this.types = new ArrayList<Entry<String, ExcelType>>();
+        this.types = new ColumnSchema();
         extractTypes(sheet);
         this.tableName = Utils.cleanUp(sheet.getSheetName());
+        this.indexes = new LinkedHashSet<String>();
         this.columnOffset = 0;
     }
 
+    /**
+     * Adds a secondary index on the given column, built after the data is
+     * loaded
+     *
+     * @param columnName
+     */
+    public void addIndex(final String columnName) {
+        if (types.indexOf(columnName) < 0) {
+            throw new IllegalArgumentException("Unknown index column: " + columnName);
+        }
+        indexes.add(columnName);
+    }
+
     /**
      * Creates a drop statement for the worksheet
      *
@@ -77,6 +101,108 @@ public class WorkhseetToMySQL {
         Utils.executeStatements(conn, getInserts());
     }
 
+    /**
+     * Adds the worksheet data to the database, converting the rows in chunks
+     * on the common fork-join pool as {@link #getInsertsInParallel(int)} does.
+     * Each chunk's statements are executed as soon as the chunk is converted,
+     * in row order, so only the chunks in flight are held in memory.
+     *
+     * @param conn
+     * @param chunkSize maximum number of rows converted by a single task
+     * @throws SQLException
+     */
+    public void addDataToDatabase(final Connection conn, final int chunkSize) throws SQLException {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1");
+        }
+        if (!(sheet.getWorkbook() instanceof HSSFWorkbook)) {
+            addDataToDatabase(conn);
+            return;
+        }
+        final ForkJoinPool pool = ForkJoinPool.commonPool();
+        //Enough chunks to keep every worker busy while the oldest is written
+        final int maxPending = pool.getParallelism() + 1;
+        final Deque<ForkJoinTask<List<String>>> pending = new ArrayDeque<ForkJoinTask<List<String>>>(maxPending);
+        final int lastRow = sheet.getLastRowNum();
+        int nextRow = rowOffset + 1;
+        try {
+            while (nextRow <= lastRow || !pending.isEmpty()) {
+                while (nextRow <= lastRow && pending.size() < maxPending) {
+                    final int end = lastRow - nextRow < chunkSize ? lastRow + 1 : nextRow + chunkSize;
+                    pending.add(pool.submit(new InsertTask(nextRow, end, chunkSize)));
+                    nextRow = end;
+                }
+                Utils.executeStatements(conn, join(pending.remove()));
+            }
+        } finally {
+            //Only left over if converting or writing a chunk failed
+            for (final ForkJoinTask<List<String>> task : pending) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    public void createIndexes(final Connection conn) throws SQLException {
+        Utils.executeStatements(conn, getIndexStatements(tableName));
+    }
+
+    /**
+     * Loads the worksheet into a shadow table, builds its indexes, and then
+     * swaps it in place of the existing table so readers never see a partial
+     * table
+     *
+     * @param conn
+     * @throws SQLException
+     */
+    public void publishToDatabase(final Connection conn) throws SQLException {
+        final String loadingTable = Utils.getLoadingTableName(tableName);
+        Utils.executeStatements(conn, "DROP TABLE IF EXISTS `" + loadingTable + "`;", getCreateStatement(loadingTable));
+        Utils.executeStatements(conn, getInserts(loadingTable));
+        Utils.executeStatements(conn, getIndexStatements(loadingTable));
+        Utils.publishTable(conn, loadingTable, tableName);
+    }
+
+    /**
+     * Adds the worksheet data to several databases, routing each row to a
+     * shard by hashing the value of the given key column as
+     * {@link #getShardedInserts(String, int)} does. The table is dropped and
+     * created on each shard first. Each shard is written by its own thread
+     * over its own connection, fed through a bounded queue as the rows are
+     * converted.
+     *
+     * @param keyColumn column whose value decides the shard of each row
+     * @param shards connections to write the shards to
+     * @throws SQLException
+     */
+    public void addDataToDatabase(final String keyColumn, final List<Connection> shards) throws SQLException {
+        final int keyIndex = getKeyIndex(keyColumn, shards.size());
+        final ExcelType keyType = types.getType(keyIndex);
+        final FormulaEvaluator evaluator = sheet.getWorkbook().getCreationHelper().createFormulaEvaluator();
+        final ShardWriter writer = new ShardWriter(shards, SHARD_QUEUE_CAPACITY);
+        try {
+            for (int shard = 0; shard < shards.size(); shard++) {
+                writer.add(shard, getDropStatement());
+                writer.add(shard, getCreateStatement());
+            }
+            int rowCount = 0;
+            for (final Row row : new IteratorWrapper<Row>(sheet.iterator())) {
+                if (rowCount > rowOffset) {
+                    //Data rows
+                    final String insert = createInsertStatement(row, evaluator, tableName);
+                    if (insert != null && !writer.add(getShard(row, keyIndex, keyType, evaluator, shards.size()), insert)) {
+                        //A shard has failed
+                        break;
+                    }
+                }
+                rowCount++;
+            }
+        } catch (RuntimeException ex) {
+            writer.cancel(ex);
+            throw ex;
+        }
+        writer.finish();
+    }
+
     private void addTableFromSheet(final Connection conn) throws SQLException {
         final int numRows = sheet.getPhysicalNumberOfRows();
         if (numRows < 2) {
@@ -107,12 +233,17 @@ public class WorkhseetToMySQL {
      * @return a list of MySQL insert commands generated from worksheet
      */
     public List<String> getInserts() {
+        return getInserts(tableName);
+    }
+
+    private List<String> getInserts(final String table) {
         final List<String> updates = new LinkedList<String>();
+        final FormulaEvaluator evaluator = sheet.getWorkbook().getCreationHelper().createFormulaEvaluator();
         int rowCount = 0;
         for (final Row row : new IteratorWrapper<Row>(sheet.iterator())) {
             if (rowCount > rowOffset) {
                 //Data rows
-                final String insert = createInsertStatement(row);
+                final String insert = createInsertStatement(row, evaluator, table);
                 if (insert != null) {
                     updates.add(insert);
                 }
@@ -122,78 +253,253 @@ public class WorkhseetToMySQL {
         return updates;
     }
 
-    private String createInsertStatement(final Row row) {
+    /**
+     * Generate MySQL Insert statements from Worksheet, converting the data rows
+     * in chunks on the common fork-join pool. Each chunk uses its own formula
+     * evaluator, and the statements are returned in row order.
+     *
+     * Only .xls (HSSF) sheets are converted in parallel. Their cells are plain
+     * objects which the tasks only read, as formulas are evaluated without
+     * being written back. .xlsx (XSSF) cells are backed by XMLBeans, which
+     * locks its document on every read, so the chunks would run one after
+     * another; those sheets are converted by {@link #getInserts()} instead.
+     *
+     * @param chunkSize maximum number of rows converted by a single task
+     * @return a list of MySQL insert commands generated from worksheet
+     */
+    public List<String> getInsertsInParallel(final int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1");
+        }
+        if (!(sheet.getWorkbook() instanceof HSSFWorkbook)) {
+            return getInserts();
+        }
+        final int firstRow = rowOffset + 1;
+        final int lastRow = sheet.getLastRowNum();
+        if (firstRow > lastRow) {
+            return new LinkedList<String>();
+        }
+        return join(ForkJoinPool.commonPool().submit(new InsertTask(firstRow, lastRow + 1, chunkSize)));
+    }
+
+    /**
+     * Waits for the task, rethrowing its failure as thrown by the task
+     */
+    private static List<String> join(final ForkJoinTask<List<String>> task) {
+        try {
+            return task.join();
+        } catch (RuntimeException ex) {
+            //Failures on other threads are rethrown as a copy wrapping the original
+            if (ex.getCause() != null && ex.getCause().getClass() == ex.getClass()) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Converts the rows from start (inclusive) to end (exclusive), splitting
+     * the range in half until it is no larger than the chunk size
+     */
+    private class InsertTask extends RecursiveTask<List<String>> {
+
+        private static final long serialVersionUID = 1L;
+        private final int start;
+        private final int end;
+        private final int chunkSize;
+
+        InsertTask(int start, int end, int chunkSize) {
+            this.start = start;
+            this.end = end;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected List<String> compute() {
+            if (end - start <= chunkSize) {
+                final List<String> updates = new ArrayList<String>(end - start);
+                final FormulaEvaluator evaluator = sheet.getWorkbook().getCreationHelper().createFormulaEvaluator();
+                for (int rowIndex = start; rowIndex < end; rowIndex++) {
+                    final Row row = sheet.getRow(rowIndex);
+                    if (row != null) {
+                        final String insert = createInsertStatement(row, evaluator, tableName);
+                        if (insert != null) {
+                            updates.add(insert);
+                        }
+                    }
+                }
+                return updates;
+            }
+            final int middle = start + (end - start) / 2;
+            final InsertTask head = new InsertTask(start, middle, chunkSize);
+            final InsertTask tail = new InsertTask(middle, end, chunkSize);
+            head.fork();
+            final List<String> tailUpdates = tail.compute();
+            final List<String> updates = head.join();
+            updates.addAll(tailUpdates);
+            return updates;
+        }
+    }
+
+    /**
+     * Generate MySQL Insert statements from Worksheet, split into shards by
+     * hashing the value of the given key column. Rows with a missing or blank
+     * key cell all go to the first shard.
+     *
+     * @param keyColumn column whose value decides the shard of each row
+     * @param shardCount number of shards to split the rows between
+     * @return a list of MySQL insert commands for each shard
+     */
+    public List<List<String>> getShardedInserts(final String keyColumn, final int shardCount) {
+        final int keyIndex = getKeyIndex(keyColumn, shardCount);
+        final ExcelType keyType = types.getType(keyIndex);
+
+        final List<List<String>> shards = new ArrayList<List<String>>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            shards.add(new LinkedList<String>());
+        }
+        final FormulaEvaluator evaluator = sheet.getWorkbook().getCreationHelper().createFormulaEvaluator();
+        int rowCount = 0;
+        for (final Row row : new IteratorWrapper<Row>(sheet.iterator())) {
+            if (rowCount > rowOffset) {
+                //Data rows
+                final String insert = createInsertStatement(row, evaluator, tableName);
+                if (insert != null) {
+                    shards.get(getShard(row, keyIndex, keyType, evaluator, shardCount)).add(insert);
+                }
+            }
+            rowCount++;
+        }
+        return shards;
+    }
+
+    /**
+     * @return the index of the key column rows are sharded by
+     */
+    private int getKeyIndex(final String keyColumn, final int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        final int keyIndex = types.indexOf(keyColumn);
+        if (keyIndex < 0) {
+            throw new IllegalArgumentException("Unknown key column: " + keyColumn);
+        }
+        return keyIndex;
+    }
+
+    /**
+     * @return the shard of the row, the first shard if it has no key value
+     */
+    private int getShard(final Row row, final int keyIndex, final ExcelType keyType, final FormulaEvaluator evaluator, final int shardCount) {
+        final Cell cell = row.getCell(keyIndex);
+        if (cell == null || cell.getCellType() == Cell.CELL_TYPE_BLANK) {
+            return 0;
+        }
+        final String key = getStringValue(keyType, cell, evaluator);
+        if (key == null) {
+            return 0;
+        }
+        return (key.hashCode() & Integer.MAX_VALUE) % shardCount;
+    }
+
+    private String createInsertStatement(final Row row, final FormulaEvaluator evaluator, final String table) {
         //Iterate
         final StringBuilder columns = new StringBuilder();
         final StringBuilder values = new StringBuilder();
-        final FormulaEvaluator evaluator = row.getSheet().getWorkbook().getCreationHelper().createFormulaEvaluator();
 
         int nullCount = 0;
-        int columnCount = 0;
-        for (Entry<String, ExcelType> sourceType : types) {
-            if (isSet(sourceType)) {
-                columns.append("`").append(sourceType.getKey()).append("`").append(",");
-                Cell cell = row.getCell(columnCount);
-
-                if (cell == null) {
-                    values.append("null").append(",");
-                } else {
-                    cell = evaluator.evaluateInCell(cell);
-
-                    final String stringValue = getStringValue(sourceType.getValue(), cell);
-                    if (stringValue == null) {
-                        nullCount++;
-                    }
-                    values.append(stringValue).append(",");
-                }
+        for (final int column : types.getAcceptedColumns()) {
+            columns.append("`").append(types.getName(column)).append("`").append(",");
+            final Cell cell = row.getCell(column);
 
+            if (cell == null) {
+                values.append("null").append(",");
+            } else {
+                final String stringValue = getStringValue(types.getType(column), cell, evaluator);
+                if (stringValue == null) {
+                    nullCount++;
+                }
+                values.append(stringValue).append(",");
             }
-            columnCount++;
         }
         columns.deleteCharAt(columns.length() - 1);
         values.deleteCharAt(values.length() - 1);
 
-        if (nullCount >= columnCount) {
+        if (nullCount >= types.size()) {
             return null;
         }
-        return "INSERT INTO `" + tableName + "` (" + columns + ") VALUES (" + values + ");";
+        return "INSERT INTO `" + table + "` (" + columns + ") VALUES (" + values + ");";
     }
 
-    private String getStringValue(ExcelType type, Cell cell) {
+    /**
+     * Formula cells are evaluated without being replaced in the workbook, so
+     * that rows can be converted concurrently.
+     */
+    private String getStringValue(ExcelType type, Cell cell, FormulaEvaluator evaluator) {
+        if (cell.getCellType() != Cell.CELL_TYPE_FORMULA) {
+            return getStringValue(type, cell);
+        }
+        final CellValue value = evaluator.evaluate(cell);
         switch (type) {
             case DATE:
-                return "'" + new SimpleDateFormat("yyyy-MM-dd HH:mm").format(cell.getDateCellValue()) + "'";
+                checkResultType(value, Cell.CELL_TYPE_NUMERIC);
+                return Utils.toSqlDate(DateUtil.getJavaDate(value.getNumberValue()));
             case NUMERIC:
-                return String.valueOf(cell.getNumericCellValue());
+                checkResultType(value, Cell.CELL_TYPE_NUMERIC);
+                return String.valueOf(value.getNumberValue());
             case BOOLEAN:
-                return String.valueOf(cell.getBooleanCellValue());
+                checkResultType(value, Cell.CELL_TYPE_BOOLEAN);
+                return String.valueOf(value.getBooleanValue());
             case STRING:
-                return "'" + cell.getStringCellValue().replaceAll("'", "\\\\'") + "'";
+                checkResultType(value, Cell.CELL_TYPE_STRING);
+                return Utils.toSqlString(value.getStringValue());
             default:
                 return null;
         }
     }
 
-    private static boolean isSet(Entry<String, ExcelType> entry) {
-        return entry != null && entry.getKey() != null && entry.getValue() != null;
+    /**
+     * Fails with the same error POI gives when reading a cell as the wrong
+     * type, as formula results were previously read from the cell
+     */
+    private static void checkResultType(CellValue value, int expectedType) {
+        if (value.getCellType() != expectedType) {
+            throw new IllegalStateException("Cannot get a " + getCellTypeName(expectedType)
+                    + " value from a " + getCellTypeName(value.getCellType()) + " cell");
+        }
     }
 
-    private void addColumnName(int cellCount, String columnName, Sheet sheet) {
-        //Doesn't exist yet
-        if (!Utils.typesContain(types, columnName)) {
-            types.add(cellCount, new AbstractMap.SimpleEntry<String, ExcelType>(columnName, null));
-
-        } else {
-            //Already contains column
-            int tempIndex = 1;
+    private static String getCellTypeName(int cellType) {
+        switch (cellType) {
+            case Cell.CELL_TYPE_BLANK:
+                return "blank";
+            case Cell.CELL_TYPE_STRING:
+                return "text";
+            case Cell.CELL_TYPE_BOOLEAN:
+                return "boolean";
+            case Cell.CELL_TYPE_ERROR:
+                return "error";
+            case Cell.CELL_TYPE_NUMERIC:
+                return "numeric";
+            case Cell.CELL_TYPE_FORMULA:
+                return "formula";
+            default:
+                return "#unknown cell type (" + cellType + ")#";
+        }
+    }
 
-            String tempCol = columnName + tempIndex;
-            while (Utils.typesContain(types, tempCol)) {
-                //Contains suggested value, increments
-                tempCol = columnName + tempIndex;
-                tempIndex++;
-            }
-            addColumnName(cellCount, tempCol, sheet);
+    private String getStringValue(ExcelType type, Cell cell) {
+        switch (type) {
+            case DATE:
+                return Utils.toSqlDate(cell.getDateCellValue());
+            case NUMERIC:
+                return String.valueOf(cell.getNumericCellValue());
+            case BOOLEAN:
+                return String.valueOf(cell.getBooleanCellValue());
+            case STRING:
+                return Utils.toSqlString(cell.getStringCellValue());
+            default:
+                return null;
         }
     }
 
@@ -201,14 +507,11 @@ public class WorkhseetToMySQL {
 
 
         {
-            int cellCount = columnOffset;
             //First row - get column names
             final Iterator<Cell> cellIterator = sheet.getRow(rowOffset).cellIterator();
 
             for (final Cell cell : new IteratorWrapper<Cell>(cellIterator)) {
-                final String columnName = Utils.cleanUp(cell.getStringCellValue());
-                addColumnName(cellCount, columnName, sheet);
-                cellCount++;
+                types.addColumn(Utils.cleanUp(cell.getStringCellValue()));
             }
         }
         {
@@ -216,10 +519,7 @@ public class WorkhseetToMySQL {
             //Second row - work out column type based on these values
             final Iterator<Cell> cellIterator = sheet.getRow(rowOffset + 1).cellIterator();
             for (final Cell cell : new IteratorWrapper<Cell>(cellIterator)) {
-                final Entry<String, ExcelType> type = types.get(cellCount);
-                if (type != null) {
-                    type.setValue(Utils.excelTypeToMySql(cell));
-                }
+                types.setType(cellCount, Utils.excelTypeToMySql(cell));
                 cellCount++;
             }
         }
@@ -233,22 +533,26 @@ public class WorkhseetToMySQL {
      * table create statement
      */
     public String getCreateStatement() {
+        return getCreateStatement(tableName);
+    }
 
-        if (types.size() < 1) {
-            return null;
-        }
-        final StringBuilder create = new StringBuilder();
-        create.append("CREATE TABLE IF NOT EXISTS `").append(tableName).append("` (\n");
-        //auto add a primary key
-        create.append("\t`").append(tableName).append("ID` int(11) NOT NULL AUTO_INCREMENT, \n");
+    private String getCreateStatement(final String table) {
+        return types.getCreateStatement(table, tableName);
+    }
 
-        for (Entry<String, ExcelType> entry : types) {
-            if (isSet(entry)) {
-                create.append("\t`").append(entry.getKey()).append("` ").append(entry.getValue().getMySqlType()).append(" DEFAULT NULL, \n");
-            }
+    /**
+     * Generates the statements adding the secondary indexes to the table, all
+     * indexes are added by a single statement so the table is only rebuilt
+     * once
+     *
+     * @return the index statements, empty if there are no indexes
+     */
+    private List<String> getIndexStatements(final String table) {
+        final List<String> statements = new LinkedList<String>();
+        final String alter = types.getAddIndexStatement(table, indexes);
+        if (alter != null) {
+            statements.add(alter);
         }
-        create.append("\tPRIMARY KEY (`").append(tableName).append("ID`)\n");
-        create.append(");\n");
-        return create.toString();
+        return statements;
     }
 }
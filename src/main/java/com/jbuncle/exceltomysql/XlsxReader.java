@@ -0,0 +1,355 @@
+/*
+ *  Copyright (c) 2013 James Buncle
+ * 
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ * 
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ * 
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ * 
+ */
+package com.jbuncle.exceltomysql;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+/**
+ * Low level .xlsx reader which streams the sheet and shared strings parts
+ * straight from the zip file with a StAX parser, rather than building the
+ * workbook object model.
+ *
+ * @author James Buncle
+ */
+public class XlsxReader implements Closeable {
+
+    private static final String OFFICE_DOCUMENT = "/officeDocument";
+    private static final String SHARED_STRINGS = "/sharedStrings";
+    private static final String STYLES = "/styles";
+    private final XMLInputFactory factory;
+    private final ZipFile zip;
+    /**
+     * Sheet names to the zip entry of the sheet, in workbook order
+     */
+    private final Map<String, String> sheets;
+    /**
+     * Directory to map the shared strings from, or null to hold them in direct
+     * memory
+     */
+    private final File sharedStringsDirectory;
+    private SharedStringsStore sharedStrings;
+    private boolean[] dateStyles;
+    private boolean date1904;
+
+    /**
+     * Creates a reader which maps the shared strings from temporary files in
+     * java.io.tmpdir
+     *
+     * @param file the .xlsx workbook to read
+     * @throws IOException
+     */
+    public XlsxReader(File file) throws IOException {
+        this(file, new File(System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * @param file the .xlsx workbook to read
+     * @param sharedStringsDirectory directory for temporary files holding the
+     * shared strings, or null to hold them in direct memory. Direct memory is
+     * limited by -XX:MaxDirectMemorySize, which must allow for up to three
+     * times the UTF-8 size of the shared strings
+     * @throws IOException
+     */
+    public XlsxReader(File file, File sharedStringsDirectory) throws IOException {
+        this.factory = XMLInputFactory.newInstance();
+        this.factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        this.factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        this.zip = new ZipFile(file);
+        this.sheets = new LinkedHashMap<String, String>();
+        this.sharedStringsDirectory = sharedStringsDirectory;
+        this.dateStyles = new boolean[0];
+        try {
+            readWorkbook();
+        } catch (XMLStreamException ex) {
+            close();
+            throw new IOException("Failed to read workbook " + file, ex);
+        } catch (IOException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @return the names of the sheets, in workbook order
+     */
+    public List<String> getSheetNames() {
+        return new ArrayList<String>(sheets.keySet());
+    }
+
+    /**
+     * Opens a stream over the rows of the named sheet
+     *
+     * @param sheetName name of the sheet to read
+     * @return a reader for the rows of the sheet, which must be closed
+     * @throws IOException
+     */
+    public XlsxSheetReader openSheet(String sheetName) throws IOException {
+        final String path = sheets.get(sheetName);
+        if (path == null) {
+            throw new IllegalArgumentException("Unknown sheet: " + sheetName);
+        }
+        final InputStream in = openPart(path);
+        try {
+            return new XlsxSheetReader(this, in, createReader(in));
+        } catch (IOException ex) {
+            in.close();
+            throw ex;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (sharedStrings != null) {
+                sharedStrings.close();
+            }
+        } finally {
+            zip.close();
+        }
+    }
+
+    private InputStream openPart(String path) throws IOException {
+        final ZipEntry entry = zip.getEntry(path);
+        if (entry == null) {
+            throw new IOException("Missing workbook part: " + path);
+        }
+        return zip.getInputStream(entry);
+    }
+
+    private XMLStreamReader createReader(InputStream in) throws IOException {
+        try {
+            return factory.createXMLStreamReader(in);
+        } catch (XMLStreamException ex) {
+            throw new IOException("Failed to read workbook part", ex);
+        }
+    }
+
+    SharedStringsStore getSharedStrings() {
+        return sharedStrings;
+    }
+
+    boolean isDateStyle(int styleIndex) {
+        return styleIndex >= 0 && styleIndex < dateStyles.length && dateStyles[styleIndex];
+    }
+
+    boolean isDate1904() {
+        return date1904;
+    }
+
+    static String getAttribute(XMLStreamReader reader, String localName) {
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            if (reader.getAttributeLocalName(i).equals(localName)) {
+                return reader.getAttributeValue(i);
+            }
+        }
+        return null;
+    }
+
+    private void readWorkbook() throws IOException, XMLStreamException {
+        String workbookPath = null;
+        for (Map.Entry<String, String[]> relation : readRelations("_rels/.rels").entrySet()) {
+            if (relation.getValue()[0].endsWith(OFFICE_DOCUMENT)) {
+                workbookPath = resolve("", relation.getValue()[1]);
+            }
+        }
+        if (workbookPath == null) {
+            throw new IOException("Not a .xlsx workbook, no office document found");
+        }
+        final String directory = workbookPath.substring(0, workbookPath.lastIndexOf('/') + 1);
+        final String relationsPath = directory + "_rels/" + workbookPath.substring(directory.length()) + ".rels";
+
+        //Relation id to target
+        final Map<String, String> targets = new HashMap<String, String>();
+        String stylesPath = null;
+        String sharedStringsPath = null;
+        for (Map.Entry<String, String[]> relation : readRelations(relationsPath).entrySet()) {
+            final String type = relation.getValue()[0];
+            final String target = resolve(directory, relation.getValue()[1]);
+            targets.put(relation.getKey(), target);
+            if (type.endsWith(STYLES)) {
+                stylesPath = target;
+            } else if (type.endsWith(SHARED_STRINGS)) {
+                sharedStringsPath = target;
+            }
+        }
+
+        final InputStream in = openPart(workbookPath);
+        final XMLStreamReader reader = createReader(in);
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                    if (reader.getLocalName().equals("workbookPr")) {
+                        final String value = getAttribute(reader, "date1904");
+                        date1904 = "1".equals(value) || "true".equals(value);
+                    } else if (reader.getLocalName().equals("sheet")) {
+                        sheets.put(getAttribute(reader, "name"), targets.get(getAttribute(reader, "id")));
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+            in.close();
+        }
+        if (stylesPath != null) {
+            readStyles(stylesPath);
+        }
+        if (sharedStringsPath != null) {
+            readSharedStrings(sharedStringsPath);
+        }
+        if (sharedStrings == null) {
+            sharedStrings = createSharedStrings(0);
+        }
+        sharedStrings.finish();
+    }
+
+    /**
+     * @return map of relationship id to the relationship type and target
+     */
+    private Map<String, String[]> readRelations(String path) throws IOException, XMLStreamException {
+        final Map<String, String[]> relations = new LinkedHashMap<String, String[]>();
+        final InputStream in = openPart(path);
+        final XMLStreamReader reader = createReader(in);
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT
+                        && reader.getLocalName().equals("Relationship")) {
+                    relations.put(getAttribute(reader, "Id"), new String[]{getAttribute(reader, "Type"), getAttribute(reader, "Target")});
+                }
+            }
+        } finally {
+            reader.close();
+            in.close();
+        }
+        return relations;
+    }
+
+    private static String resolve(String directory, String target) {
+        if (target.startsWith("/")) {
+            return target.substring(1);
+        }
+        String path = directory + target;
+        //Collapse parent references
+        int parent;
+        while ((parent = path.indexOf("/../")) > 0) {
+            final int start = path.lastIndexOf('/', parent - 1);
+            path = path.substring(0, start + 1) + path.substring(parent + 4);
+        }
+        return path;
+    }
+
+    private void readStyles(String path) throws IOException, XMLStreamException {
+        final Map<Integer, String> formats = new HashMap<Integer, String>();
+        final List<Boolean> styles = new ArrayList<Boolean>();
+        final InputStream in = openPart(path);
+        final XMLStreamReader reader = createReader(in);
+        try {
+            boolean inCellFormats = false;
+            while (reader.hasNext()) {
+                final int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    final String name = reader.getLocalName();
+                    if (name.equals("numFmt")) {
+                        formats.put(Integer.valueOf(getAttribute(reader, "numFmtId")), getAttribute(reader, "formatCode"));
+                    } else if (name.equals("cellXfs")) {
+                        inCellFormats = true;
+                    } else if (inCellFormats && name.equals("xf")) {
+                        final String formatId = getAttribute(reader, "numFmtId");
+                        final int format = formatId == null ? 0 : Integer.parseInt(formatId);
+                        styles.add(DateUtil.isADateFormat(format, formats.get(format)));
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT
+                        && reader.getLocalName().equals("cellXfs")) {
+                    inCellFormats = false;
+                }
+            }
+        } finally {
+            reader.close();
+            in.close();
+        }
+        dateStyles = new boolean[styles.size()];
+        for (int i = 0; i < dateStyles.length; i++) {
+            dateStyles[i] = styles.get(i);
+        }
+    }
+
+    private SharedStringsStore createSharedStrings(int expectedCount) throws IOException {
+        if (sharedStringsDirectory == null) {
+            return new SharedStringsStore(expectedCount);
+        }
+        return new SharedStringsStore(expectedCount, sharedStringsDirectory);
+    }
+
+    private void readSharedStrings(String path) throws IOException, XMLStreamException {
+        final InputStream in = openPart(path);
+        final XMLStreamReader reader = createReader(in);
+        try {
+            boolean inText = false;
+            boolean inPhonetic = false;
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        if (reader.getLocalName().equals("t")) {
+                            inText = !inPhonetic;
+                        } else if (reader.getLocalName().equals("rPh")) {
+                            inPhonetic = true;
+                        } else if (reader.getLocalName().equals("sst")) {
+                            final String uniqueCount = getAttribute(reader, "uniqueCount");
+                            sharedStrings = createSharedStrings(uniqueCount == null ? 0 : Integer.parseInt(uniqueCount));
+                        }
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        if (inText) {
+                            //Copy straight from the parser's buffer
+                            sharedStrings.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        if (reader.getLocalName().equals("t")) {
+                            inText = false;
+                        } else if (reader.getLocalName().equals("rPh")) {
+                            inPhonetic = false;
+                        } else if (reader.getLocalName().equals("si")) {
+                            sharedStrings.endString();
+                        }
+                        break;
+                }
+            }
+        } finally {
+            reader.close();
+            in.close();
+        }
+    }
+}
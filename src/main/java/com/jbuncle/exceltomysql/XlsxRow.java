@@ -0,0 +1,213 @@
+/*
+ *  Copyright (c) 2013 James Buncle
+ * 
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ * 
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ * 
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ * 
+ */
+package com.jbuncle.exceltomysql;
+
+import java.util.Arrays;
+import java.util.Date;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+/**
+ * A row read by {@link XlsxSheetReader}. The same instance is reused for each
+ * row of the sheet, so values must be read before moving to the next row.
+ * Shared strings are only decoded when their value is requested.
+ *
+ * @author James Buncle
+ */
+public class XlsxRow {
+
+    private static final byte BLANK = 0;
+    private static final byte NUMBER = 1;
+    private static final byte DATE = 2;
+    private static final byte BOOLEAN = 3;
+    private static final byte SHARED_STRING = 4;
+    private static final byte STRING = 5;
+    private static final byte ERROR = 6;
+    /**
+     * Formula with no cached result, as saved by tools which don't calculate
+     */
+    private static final byte UNCALCULATED = 7;
+    private final SharedStringsStore sharedStrings;
+    private final boolean date1904;
+    private int rowNum;
+    private int cellCount;
+    private byte[] kinds;
+    private double[] numbers;
+    private int[] sharedStringIndexes;
+    private String[] strings;
+
+    XlsxRow(SharedStringsStore sharedStrings, boolean date1904) {
+        this.sharedStrings = sharedStrings;
+        this.date1904 = date1904;
+        this.kinds = new byte[16];
+        this.numbers = new double[16];
+        this.sharedStringIndexes = new int[16];
+        this.strings = new String[16];
+    }
+
+    /**
+     * @return the zero based index of the row in the sheet
+     */
+    public int getRowNum() {
+        return rowNum;
+    }
+
+    /**
+     * @return one more than the index of the last cell in the row
+     */
+    public int getCellCount() {
+        return cellCount;
+    }
+
+    /**
+     * @param column zero based column index
+     * @return the type of the cell, or null if the cell is blank
+     */
+    public ExcelType getType(int column) {
+        switch (getKind(column)) {
+            case NUMBER:
+                return ExcelType.NUMERIC;
+            case DATE:
+                return ExcelType.DATE;
+            case BOOLEAN:
+                return ExcelType.BOOLEAN;
+            case SHARED_STRING:
+            case STRING:
+                return ExcelType.STRING;
+            default:
+                return null;
+        }
+    }
+
+    public boolean isBlank(int column) {
+        return getKind(column) == BLANK;
+    }
+
+    /**
+     * @param column zero based column index
+     * @return true if the cell holds an error, such as #DIV/0!, or a formula
+     * with no cached result. These cells have no value of any type
+     */
+    public boolean isError(int column) {
+        final byte kind = getKind(column);
+        return kind == ERROR || kind == UNCALCULATED;
+    }
+
+    public double getNumericValue(int column) {
+        final byte kind = getKind(column);
+        if (kind != NUMBER && kind != DATE) {
+            throw createTypeException("numeric", column);
+        }
+        return numbers[column];
+    }
+
+    public Date getDateValue(int column) {
+        return DateUtil.getJavaDate(getNumericValue(column), date1904);
+    }
+
+    public boolean getBooleanValue(int column) {
+        if (getKind(column) != BOOLEAN) {
+            throw createTypeException("boolean", column);
+        }
+        return numbers[column] != 0;
+    }
+
+    public String getStringValue(int column) {
+        switch (getKind(column)) {
+            case SHARED_STRING:
+                return sharedStrings.get(sharedStringIndexes[column]);
+            case STRING:
+                return strings[column];
+            default:
+                throw createTypeException("text", column);
+        }
+    }
+
+    void reset(int rowNum) {
+        Arrays.fill(kinds, 0, cellCount, BLANK);
+        Arrays.fill(strings, 0, cellCount, null);
+        this.rowNum = rowNum;
+        this.cellCount = 0;
+    }
+
+    void setNumber(int column, double value, boolean date) {
+        set(column, date ? DATE : NUMBER);
+        numbers[column] = value;
+    }
+
+    void setBoolean(int column, boolean value) {
+        set(column, BOOLEAN);
+        numbers[column] = value ? 1 : 0;
+    }
+
+    void setSharedString(int column, int index) {
+        set(column, SHARED_STRING);
+        sharedStringIndexes[column] = index;
+    }
+
+    void setString(int column, String value) {
+        set(column, STRING);
+        strings[column] = value;
+    }
+
+    void setError(int column, String value) {
+        set(column, ERROR);
+        strings[column] = value;
+    }
+
+    void setUncalculated(int column) {
+        set(column, UNCALCULATED);
+    }
+
+    private IllegalStateException createTypeException(String type, int column) {
+        final String cell = "cell " + column + " of row " + rowNum;
+        switch (getKind(column)) {
+            case ERROR:
+                return new IllegalStateException("Cannot get a " + type + " value from error " + cell + ": " + strings[column]);
+            case UNCALCULATED:
+                return new IllegalStateException("Cannot get a " + type + " value from " + cell + ", its formula has no cached result");
+            default:
+                return new IllegalStateException("Cannot get a " + type + " value from " + cell);
+        }
+    }
+
+    private byte getKind(int column) {
+        if (column < 0 || column >= cellCount) {
+            return BLANK;
+        }
+        return kinds[column];
+    }
+
+    private void set(int column, byte kind) {
+        if (column >= kinds.length) {
+            final int capacity = Math.max(column + 1, kinds.length * 2);
+            kinds = Arrays.copyOf(kinds, capacity);
+            numbers = Arrays.copyOf(numbers, capacity);
+            sharedStringIndexes = Arrays.copyOf(sharedStringIndexes, capacity);
+            strings = Arrays.copyOf(strings, capacity);
+        }
+        kinds[column] = kind;
+        if (column >= cellCount) {
+            cellCount = column + 1;
+        }
+    }
+}
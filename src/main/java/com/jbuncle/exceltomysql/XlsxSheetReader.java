@@ -0,0 +1,231 @@
+/*
+ *  Copyright (c) 2013 James Buncle
+ * 
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ * 
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ * 
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ * 
+ */
+package com.jbuncle.exceltomysql;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streams the rows of a single .xlsx sheet. Formula cells give their cached
+ * result, as saved by Excel. Error values, and formulas saved without a
+ * cached result, are read as error cells.
+ *
+ * @author James Buncle
+ */
+public class XlsxSheetReader implements Closeable {
+
+    private final XlsxReader workbook;
+    private final InputStream in;
+    private final XMLStreamReader reader;
+    private final XlsxRow row;
+    /**
+     * Reused buffer for the value of the current cell
+     */
+    private final StringBuilder value;
+    /**
+     * Columns to read by column index, or null to read every column
+     */
+    private boolean[] projection;
+    private int rowNum;
+
+    XlsxSheetReader(XlsxReader workbook, InputStream in, XMLStreamReader reader) {
+        this.workbook = workbook;
+        this.in = in;
+        this.reader = reader;
+        this.row = new XlsxRow(workbook.getSharedStrings(), workbook.isDate1904());
+        this.value = new StringBuilder();
+        this.rowNum = -1;
+    }
+
+    /**
+     * Reads the next row of the sheet, rows with no cells may be skipped
+     *
+     * @return the next row, or null at the end of the sheet. The same instance
+     * is returned for every row
+     * @throws IOException
+     */
+    public XlsxRow nextRow() throws IOException {
+        try {
+            return readRow();
+        } catch (XMLStreamException ex) {
+            throw new IOException("Failed to read sheet row after " + rowNum, ex);
+        }
+    }
+
+    /**
+     * Limits the cells read to the given columns, other cells are left blank
+     * without their values being parsed or copied
+     *
+     * @param columns zero based column indexes, or null to read every column
+     */
+    public void setColumns(int[] columns) {
+        if (columns == null) {
+            projection = null;
+            return;
+        }
+        int max = -1;
+        for (final int column : columns) {
+            max = Math.max(max, column);
+        }
+        projection = new boolean[max + 1];
+        for (final int column : columns) {
+            projection[column] = true;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            reader.close();
+        } catch (XMLStreamException ex) {
+            throw new IOException(ex);
+        } finally {
+            in.close();
+        }
+    }
+
+    private XlsxRow readRow() throws XMLStreamException {
+        int column = -1;
+        String type = null;
+        int style = -1;
+        boolean projected = false;
+        boolean formula = false;
+        boolean cached = false;
+        boolean inValue = false;
+        boolean inPhonetic = false;
+        boolean inRow = false;
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT: {
+                    final String name = reader.getLocalName();
+                    if (name.equals("row")) {
+                        final String ref = XlsxReader.getAttribute(reader, "r");
+                        rowNum = ref == null ? rowNum + 1 : Integer.parseInt(ref) - 1;
+                        row.reset(rowNum);
+                        inRow = true;
+                        column = -1;
+                    } else if (name.equals("c")) {
+                        final String ref = XlsxReader.getAttribute(reader, "r");
+                        column = ref == null ? column + 1 : getColumnIndex(ref);
+                        projected = isProjected(column);
+                        type = XlsxReader.getAttribute(reader, "t");
+                        final String styleIndex = XlsxReader.getAttribute(reader, "s");
+                        style = styleIndex == null ? 0 : Integer.parseInt(styleIndex);
+                        formula = false;
+                        cached = false;
+                        value.setLength(0);
+                    } else if (name.equals("f")) {
+                        formula = true;
+                    } else if (name.equals("v")) {
+                        //Cached value
+                        cached = true;
+                        inValue = projected;
+                    } else if (name.equals("rPh")) {
+                        //Phonetic guide to an inline string, not part of its text
+                        inPhonetic = true;
+                    } else if (name.equals("t")) {
+                        //Inline string, rich text has several runs
+                        inValue = projected && !inPhonetic;
+                    }
+                    break;
+                }
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if (inValue) {
+                        value.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT: {
+                    final String name = reader.getLocalName();
+                    if (name.equals("v") || name.equals("t")) {
+                        inValue = false;
+                    } else if (name.equals("rPh")) {
+                        inPhonetic = false;
+                    } else if (name.equals("c") && projected) {
+                        setCell(column, type, style, formula && !cached);
+                    } else if (name.equals("row") && inRow) {
+                        return row;
+                    }
+                    break;
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean isProjected(int column) {
+        return projection == null || (column < projection.length && projection[column]);
+    }
+
+    private void setCell(int column, String type, int style, boolean uncalculated) {
+        if (value.length() == 0) {
+            if (uncalculated) {
+                row.setUncalculated(column);
+            }
+            return;
+        }
+        if (type == null || type.equals("n")) {
+            row.setNumber(column, Double.parseDouble(value.toString()), workbook.isDateStyle(style));
+        } else if (type.equals("s")) {
+            row.setSharedString(column, parseInt(value));
+        } else if (type.equals("b")) {
+            row.setBoolean(column, value.charAt(0) == '1');
+        } else if (type.equals("str") || type.equals("inlineStr")) {
+            row.setString(column, value.toString());
+        } else if (type.equals("e")) {
+            row.setError(column, value.toString());
+        }
+    }
+
+    private static int parseInt(CharSequence chars) {
+        int result = 0;
+        for (int i = 0; i < chars.length(); i++) {
+            final char c = chars.charAt(i);
+            if (c >= '0' && c <= '9') {
+                result = result * 10 + (c - '0');
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param ref cell reference, such as "AB12"
+     * @return the zero based column index of the reference
+     */
+    private static int getColumnIndex(String ref) {
+        int column = 0;
+        for (int i = 0; i < ref.length(); i++) {
+            final char c = ref.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                break;
+            }
+            column = column * 26 + (c - 'A' + 1);
+        }
+        return column - 1;
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ *  Copyright (c) 2013 James Buncle
+ * 
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ * 
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ * 
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ * 
+ */
+package com.jbuncle.exceltomysql;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streams a .xlsx worksheet into MySQL using {@link XlsxReader}, without
+ * loading the workbook object model. The first row holds the column headings
+ * and the second row decides the column types.
+ *
+ * @author James Buncle
+ */
+public class XlsxSheetToMySQL {
+
+    private final XlsxReader workbook;
+    private final String sheetName;
+    private final SheetFilter filter;
+    private final ColumnSchema types;
+    private final String tableName;
+    /**
+     * Columns given a secondary index once the data is loaded
+     */
+    private final Set<String> indexes;
+    private boolean strict;
+
+    public XlsxSheetToMySQL(XlsxReader workbook, String sheetName) throws IOException {
+        this(workbook, sheetName, new SheetPathFilter());
+    }
+
+    /**
+     * @param workbook the workbook to read
+     * @param sheetName name of the sheet to load
+     * @param filter decides which columns are loaded, only the values of
+     * loaded columns are read from the sheet
+     * @throws IOException
+     */
+    public XlsxSheetToMySQL(XlsxReader workbook, String sheetName, SheetFilter filter) throws IOException {
+        this.workbook = workbook;
+        this.sheetName = sheetName;
+        this.filter = filter;
+        this.types = new ColumnSchema();
+        this.tableName = Utils.cleanUp(sheetName);
+        this.indexes = new LinkedHashSet<String>();
+        this.strict = true;
+        extractTypes();
+    }
+
+    /**
+     * When strict, which is the default, loading fails on a cell which doesn't
+     * hold a value of its column's type, including error cells and formulas
+     * saved without a cached result. Otherwise these cells are loaded as NULL
+     *
+     * @param strict
+     */
+    public void setStrict(boolean strict) {
+        this.strict = strict;
+    }
+
+    /**
+     * Adds a secondary index on the given column, built after the data is
+     * loaded
+     *
+     * @param columnName
+     */
+    public void addIndex(final String columnName) {
+        if (types.indexOf(columnName) < 0) {
+            throw new IllegalArgumentException("Unknown index column: " + columnName);
+        }
+        indexes.add(columnName);
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    ColumnSchema getColumns() {
+        return types;
+    }
+
+    /**
+     * Creates a drop statement for the worksheet
+     *
+     * @return
+     */
+    public String getDropStatement() {
+        return "DROP TABLE IF EXISTS `" + tableName + "`;";
+    }
+
+    public void dropExistingTable(final Connection conn) throws SQLException {
+        Utils.executeStatements(conn, getDropStatement());
+    }
+
+    public void createTable(final Connection conn) throws SQLException {
+        Utils.executeStatements(conn, getCreateStatement());
+    }
+
+    public void createIndexes(final Connection conn) throws SQLException {
+        final String alter = types.getAddIndexStatement(tableName, indexes);
+        if (alter != null) {
+            Utils.executeStatements(conn, alter);
+        }
+    }
+
+    /**
+     * Streams the data rows of the worksheet into the table, one insert at a
+     * time
+     *
+     * @param conn
+     * @throws SQLException
+     * @throws IOException
+     */
+    public void addDataToDatabase(final Connection conn) throws SQLException, IOException {
+        addDataToDatabase(conn, tableName);
+    }
+
+    /**
+     * Loads the worksheet into a shadow table, builds its indexes, and then
+     * swaps it in place of the existing table so readers never see a partial
+     * table
+     *
+     * @param conn
+     * @throws SQLException
+     * @throws IOException
+     */
+    public void publishToDatabase(final Connection conn) throws SQLException, IOException {
+        final String loadingTable = Utils.getLoadingTableName(tableName);
+        Utils.executeStatements(conn, "DROP TABLE IF EXISTS `" + loadingTable + "`;", types.getCreateStatement(loadingTable, tableName));
+        addDataToDatabase(conn, loadingTable);
+        final String alter = types.getAddIndexStatement(loadingTable, indexes);
+        if (alter != null) {
+            Utils.executeStatements(conn, alter);
+        }
+        Utils.publishTable(conn, loadingTable, tableName);
+    }
+
+    /**
+     * Streams the data rows of the worksheet into the given table, one insert
+     * at a time
+     *
+     * @param conn
+     * @param table the table to insert into
+     * @throws SQLException
+     * @throws IOException
+     */
+    public void addDataToDatabase(final Connection conn, final String table) throws SQLException, IOException {
+        final XlsxSheetReader reader = workbook.openSheet(sheetName);
+        try {
+            reader.setColumns(types.getAcceptedColumns());
+            //Skip column headings
+            XlsxRow row = reader.nextRow();
+            while ((row = reader.nextRow()) != null) {
+                final String insert = createInsertStatement(row, table);
+                if (insert != null) {
+                    Utils.executeStatements(conn, insert);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private String createInsertStatement(final XlsxRow row, final String table) {
+        final Map<String, String> colVals = new LinkedHashMap<String, String>();
+        for (final int column : types.getAcceptedColumns()) {
+            if (!row.isBlank(column)) {
+                final String value = getStringValue(row, column);
+                if (value != null) {
+                    colVals.put(types.getName(column), value);
+                }
+            }
+        }
+        return Utils.getInsertStatement(table, colVals);
+    }
+
+    /**
+     * Converts cells as {@link ExcelToMySQL} does: any cell is loaded as text
+     * or a number, text is trimmed and empty text is left out
+     *
+     * @return the cell value as a MySQL literal, or null if the cell has no
+     * value or no value of the column's type and loading isn't strict
+     */
+    private String getStringValue(final XlsxRow row, final int column) {
+        final ExcelType type = types.getType(column);
+        try {
+            switch (type) {
+                case DATE:
+                    return Utils.toSqlDate((Date) getCellValue(row, column));
+                case NUMERIC:
+                    return String.valueOf(getCellValue(row, column));
+                case BOOLEAN:
+                    return String.valueOf(row.getBooleanValue(column));
+                case STRING:
+                    final String value = String.valueOf(getCellValue(row, column));
+                    return value.isEmpty() ? null : Utils.toSqlString(value);
+                default:
+                    return null;
+            }
+        } catch (RuntimeException ex) {
+            if (strict) {
+                throw new RuntimeException("Failed to process cell value of column:row " + column + ":" + row.getRowNum()
+                        + ", expecting type: " + type.toString(), ex);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @return the date of a date cell, otherwise the cell value as text
+     */
+    private static Object getCellValue(final XlsxRow row, final int column) {
+        final ExcelType type = row.getType(column);
+        if (type == ExcelType.BOOLEAN) {
+            return String.valueOf(row.getBooleanValue(column));
+        } else if (type == ExcelType.DATE) {
+            return row.getDateValue(column);
+        } else if (type == ExcelType.NUMERIC) {
+            return String.valueOf(row.getNumericValue(column));
+        }
+        return row.getStringValue(column).trim();
+    }
+
+    private void extractTypes() throws IOException {
+        final XlsxSheetReader reader = workbook.openSheet(sheetName);
+        try {
+            //First row - get column names
+            XlsxRow row = reader.nextRow();
+            if (row == null) {
+                return;
+            }
+            for (int cellCount = 0; cellCount < row.getCellCount(); cellCount++) {
+                if (row.isBlank(cellCount)) {
+                    types.addSkippedColumn();
+                } else {
+                    types.addColumn(sheetName, Utils.cleanUp(row.getStringValue(cellCount)), filter);
+                }
+            }
+            //Second row - work out column type based on these values
+            row = reader.nextRow();
+            if (row == null) {
+                return;
+            }
+            for (int cellCount = 0; cellCount < types.size(); cellCount++) {
+                //Blank cells are taken to be text, as by Utils.excelTypeToMySql
+                types.setType(cellCount, row.isBlank(cellCount) ? ExcelType.STRING : row.getType(cellCount));
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Generates a MySQL table create statement which is capable of holding the
+     * worksheet data
+     *
+     * @return the MySQL Table create statement, or null if unable to make the
+     * table create statement
+     */
+    public String getCreateStatement() {
+        return types.getCreateStatement(tableName, tableName);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ *  Copyright (c) 2013 James Buncle
+ * 
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ * 
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ * 
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ * 
+ */
+package com.jbuncle.exceltomysql;
+
+import java.util.Arrays;
+import junit.framework.TestCase;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Sheet;
+
+/**
+ *
+ * @author James Buncle
+ */
+public class ColumnSchemaTest extends TestCase {
+
+    public void testDuplicateNamesAreNumbered() {
+        final ColumnSchema columns = new ColumnSchema();
+        assertEquals("Value", columns.addColumn("Value"));
+        assertEquals("Value1", columns.addColumn("Value"));
+        assertEquals("Value2", columns.addColumn("Value"));
+        assertEquals("Other", columns.addColumn("Other"));
+        assertEquals("Value3", columns.addColumn("Value"));
+    }
+
+    public void testLiteralSuffixedNameIsSkipped() {
+        final ColumnSchema columns = new ColumnSchema();
+        assertEquals("Value", columns.addColumn("Value"));
+        assertEquals("Value1", columns.addColumn("Value1"));
+        assertEquals("Value2", columns.addColumn("Value"));
+        assertEquals("Value11", columns.addColumn("Value1"));
+        assertEquals("Value3", columns.addColumn("Value"));
+    }
+
+    public void testRenamedDuplicateTakenLater() {
+        final ColumnSchema columns = new ColumnSchema();
+        columns.addColumn("Value");
+        columns.addColumn("Value");
+        //"Value1" is already the name of the renamed duplicate
+        assertEquals("Value11", columns.addColumn("Value1"));
+    }
+
+    public void testUniqueNameDoesNotAddColumn() {
+        final ColumnSchema columns = new ColumnSchema();
+        columns.addColumn("Value");
+        assertEquals("Value1", columns.getUniqueName("Value"));
+        assertEquals("Value1", columns.getUniqueName("Value"));
+        assertEquals(1, columns.size());
+    }
+
+    public void testAcceptedColumns() {
+        final ColumnSchema columns = new ColumnSchema();
+        columns.addColumn("a");
+        columns.addSkippedColumn();
+        columns.addColumn("b");
+        columns.addColumn("c");
+        columns.setType(0, ExcelType.STRING);
+        columns.setType(1, ExcelType.NUMERIC);
+        columns.setType(3, ExcelType.DATE);
+        //Beyond the headings
+        columns.setType(4, ExcelType.DATE);
+
+        assertTrue(Arrays.equals(new int[]{0, 3}, columns.getAcceptedColumns()));
+        assertNull(columns.getType(1));
+        assertEquals(3, columns.indexOf("c"));
+        assertEquals(-1, columns.indexOf("b"));
+        assertEquals(-1, columns.indexOf("missing"));
+
+        columns.setType(2, ExcelType.BOOLEAN);
+        assertTrue(Arrays.equals(new int[]{0, 2, 3}, columns.getAcceptedColumns()));
+    }
+
+    public void testSheetOnlyFilter() {
+        //Filters written before sheets could be filtered by name
+        final SheetFilter filter = new SheetFilter() {
+            @Override
+            public boolean accept(Sheet sheet) {
+                return true;
+            }
+
+            @Override
+            public boolean accept(Sheet sheet, String column) {
+                return sheet.getSheetName().equals("Data") && !column.equals("b");
+            }
+        };
+        final Sheet sheet = new HSSFWorkbook().createSheet("Data");
+        final ColumnSchema columns = new ColumnSchema();
+        columns.addColumn(sheet, "a", filter);
+        columns.addColumn(sheet, "b", filter);
+        columns.addColumn(sheet, "c", filter);
+        for (int column = 0; column < 3; column++) {
+            columns.setType(column, ExcelType.STRING);
+        }
+        assertEquals(0, columns.indexOf("a"));
+        assertEquals(-1, columns.indexOf("b"));
+        assertEquals(2, columns.indexOf("c"));
+        try {
+            filter.accept("Data");
+            fail("Expected sheet names to be unsupported");
+        } catch (UnsupportedOperationException ex) {
+        }
+    }
+}
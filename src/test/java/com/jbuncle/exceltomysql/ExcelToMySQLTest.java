@@ -0,0 +1,96 @@
+/*
+ *  Copyright (c) 2013 James Buncle
+ * 
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ * 
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ * 
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ * 
+ */
+package com.jbuncle.exceltomysql;
+
+import java.sql.SQLException;
+import java.util.List;
+import junit.framework.TestCase;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+
+/**
+ *
+ * @author James Buncle
+ */
+public class ExcelToMySQLTest extends TestCase {
+
+    public void testPublishLoadsShadowTableThenSwaps() throws SQLException {
+        final ExcelToMySQL excelToMySQL = new ExcelToMySQL();
+        excelToMySQL.setLoadMode(LoadMode.PUBLISH);
+        excelToMySQL.addIndex("Stock.Code");
+        final RecordingConnection conn = new RecordingConnection();
+        excelToMySQL.addWorkbook(conn.getConnection(), createWorkbook());
+
+        final List<String> statements = conn.getStatements();
+        assertEquals("DROP TABLE IF EXISTS `Stock__loading`;", statements.get(0));
+        assertTrue(statements.get(1).startsWith("CREATE TABLE IF NOT EXISTS `Stock__loading` (\n\t`StockID`"));
+        assertTrue(statements.get(2).startsWith("INSERT INTO `Stock__loading`"));
+        assertTrue(statements.get(3).startsWith("INSERT INTO `Stock__loading`"));
+        assertEquals("ALTER TABLE `Stock__loading` ADD INDEX `Code` (`Code`(255));", statements.get(4));
+        assertEquals("DROP TABLE IF EXISTS `Stock__old`;", statements.get(5));
+        assertEquals("CREATE TABLE IF NOT EXISTS `Stock` LIKE `Stock__loading`;", statements.get(6));
+        assertEquals("RENAME TABLE `Stock` TO `Stock__old`, `Stock__loading` TO `Stock`;", statements.get(7));
+        assertEquals("DROP TABLE `Stock__old`;", statements.get(8));
+        assertEquals(9, statements.size());
+    }
+
+    public void testReplaceBuildsIndexesAfterLoad() throws SQLException {
+        final ExcelToMySQL excelToMySQL = new ExcelToMySQL();
+        excelToMySQL.addIndex("Stock.Count");
+        final RecordingConnection conn = new RecordingConnection();
+        excelToMySQL.addWorkbook(conn.getConnection(), createWorkbook());
+
+        final List<String> statements = conn.getStatements();
+        assertEquals("DROP TABLE IF EXISTS `Stock`;", statements.get(0));
+        assertEquals("ALTER TABLE `Stock` ADD INDEX `Count` (`Count`);", statements.get(statements.size() - 1));
+    }
+
+    public void testUnknownIndexColumnFails() throws SQLException {
+        final ExcelToMySQL excelToMySQL = new ExcelToMySQL();
+        excelToMySQL.addIndex("Stock.Cdoe");
+        final RecordingConnection conn = new RecordingConnection();
+        try {
+            excelToMySQL.addWorkbook(conn.getConnection(), createWorkbook());
+            fail("Expected the unknown index to fail");
+        } catch (IllegalArgumentException ex) {
+            assertEquals("Unknown index column: Stock.Cdoe", ex.getMessage());
+        }
+        assertTrue(conn.getStatements().isEmpty());
+    }
+
+    private static Workbook createWorkbook() {
+        final Workbook workbook = new HSSFWorkbook();
+        final Sheet sheet = workbook.createSheet("Stock");
+        final Row headings = sheet.createRow(0);
+        headings.createCell(0).setCellValue("Code");
+        headings.createCell(1).setCellValue("Count");
+        for (int rowIndex = 1; rowIndex <= 2; rowIndex++) {
+            final Row row = sheet.createRow(rowIndex);
+            row.createCell(0).setCellValue("C" + rowIndex);
+            row.createCell(1).setCellValue(rowIndex);
+        }
+        return workbook;
+    }
+}
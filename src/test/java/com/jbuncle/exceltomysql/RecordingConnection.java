@@ -0,0 +1,92 @@
+/*
+ *  Copyright (c) 2013 James Buncle
+ * 
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ * 
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ * 
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ * 
+ */
+package com.jbuncle.exceltomysql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Connection which records the SQL executed against it
+ *
+ * @author James Buncle
+ */
+public class RecordingConnection {
+
+    private final List<String> statements = Collections.synchronizedList(new ArrayList<String>());
+    private volatile String failure;
+    private volatile long delay;
+
+    public Connection getConnection() {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("createStatement")) {
+                    return createStatement();
+                }
+                return null;
+            }
+        });
+    }
+
+    public List<String> getStatements() {
+        return statements;
+    }
+
+    /**
+     * @param failure statement which fails with an SQLException when executed
+     */
+    public void setFailure(String failure) {
+        this.failure = failure;
+    }
+
+    /**
+     * @param delay milliseconds taken to execute each statement
+     */
+    public void setDelay(long delay) {
+        this.delay = delay;
+    }
+
+    private Statement createStatement() {
+        return (Statement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Statement.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws SQLException, InterruptedException {
+                if (method.getName().equals("execute")) {
+                    Thread.sleep(delay);
+                    if (args[0].equals(failure)) {
+                        throw new SQLException("Failed: " + failure);
+                    }
+                    statements.add(((String) args[0]).trim());
+                    return false;
+                }
+                return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ *  Copyright (c) 2013 James Buncle
+ * 
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ * 
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ * 
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ * 
+ */
+package com.jbuncle.exceltomysql;
+
+import java.io.File;
+import java.io.IOException;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author James Buncle
+ */
+public class SharedStringsStoreTest extends TestCase {
+
+    private static final String[] STRINGS = {
+        "",
+        "plain",
+        "café £",
+        "日本語",
+        "smile 😀"
+    };
+    private File directory;
+
+    @Override
+    protected void setUp() throws IOException {
+        directory = File.createTempFile("sharedStringsTest", "");
+        directory.delete();
+        directory.mkdir();
+    }
+
+    @Override
+    protected void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    public void testDirectRoundTrip() throws IOException {
+        assertRoundTrip(new SharedStringsStore(1));
+    }
+
+    public void testFileRoundTrip() throws IOException {
+        assertRoundTrip(new SharedStringsStore(1, directory));
+    }
+
+    public void testFileStoreRemovesTemporaryFiles() throws IOException {
+        final SharedStringsStore store = new SharedStringsStore(1, directory);
+        assertEquals(2, directory.listFiles().length);
+        add(store, "value");
+        store.finish();
+        if (!System.getProperty("os.name").startsWith("Windows")) {
+            //Deleted once mapped
+            assertEquals(0, directory.listFiles().length);
+        }
+        assertEquals("value", store.get(0));
+        store.close();
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    public void testUnfinishedFileStoreRemovesTemporaryFiles() throws IOException {
+        final SharedStringsStore store = new SharedStringsStore(1, directory);
+        add(store, "value");
+        store.close();
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    public void testSurrogatePairSplitAcrossAppends() throws IOException {
+        final SharedStringsStore store = new SharedStringsStore(1);
+        final char[] chars = "a😀b".toCharArray();
+        store.append(chars, 0, 2);
+        store.append(chars, 2, 2);
+        store.endString();
+        store.finish();
+        assertEquals("a😀b", store.get(0));
+        store.close();
+    }
+
+    public void testUnpairedSurrogatesAreReplaced() throws IOException {
+        final SharedStringsStore store = new SharedStringsStore(1, directory);
+        add(store, "a\ud83db");
+        add(store, "\ude00c");
+        add(store, "d\ud83d");
+        store.finish();
+        assertEquals("a?b", store.get(0));
+        assertEquals("?c", store.get(1));
+        assertEquals("d?", store.get(2));
+        store.close();
+    }
+
+    public void testGetBeforeFinishFails() throws IOException {
+        final SharedStringsStore store = new SharedStringsStore(1);
+        add(store, "value");
+        try {
+            store.get(0);
+            fail("Expected the unfinished store to fail");
+        } catch (IllegalStateException ex) {
+            assertEquals("Shared strings are not finished", ex.getMessage());
+        }
+        store.close();
+    }
+
+    /**
+     * Adds enough strings to grow the direct buffers and to flush the file
+     * buffers several times, then reads them all back
+     */
+    private static void assertRoundTrip(SharedStringsStore store) throws IOException {
+        final int count = 20000;
+        for (int i = 0; i < count; i++) {
+            add(store, STRINGS[i % STRINGS.length] + i);
+        }
+        store.finish();
+        assertEquals(count, store.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(STRINGS[i % STRINGS.length] + i, store.get(i));
+        }
+        try {
+            store.get(count);
+            fail("Expected an out of range index to fail");
+        } catch (IndexOutOfBoundsException ex) {
+            assertEquals("Shared string " + count + " of " + count, ex.getMessage());
+        }
+        store.close();
+    }
+
+    private static void add(SharedStringsStore store, String value) throws IOException {
+        store.append(value.toCharArray(), 0, value.length());
+        store.endString();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ *  Copyright (c) 2013 James Buncle
+ * 
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ * 
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ * 
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ * 
+ */
+package com.jbuncle.exceltomysql;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.AbstractMap;
+import java.util.List;
+import java.util.Map;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author James Buncle
+ */
+public class UtilsTest extends TestCase {
+
+    @SuppressWarnings("deprecation")
+    public void testTypesContain() {
+        final List<Map.Entry<String, ExcelType>> types = new ArrayList<Map.Entry<String, ExcelType>>();
+        types.add(new AbstractMap.SimpleEntry<String, ExcelType>("a", ExcelType.STRING));
+        //Skipped columns were null entries
+        types.add(null);
+        types.add(new AbstractMap.SimpleEntry<String, ExcelType>("b", ExcelType.NUMERIC));
+        assertTrue(Utils.typesContain(types, "a"));
+        assertTrue(Utils.typesContain(types, "b"));
+        assertFalse(Utils.typesContain(types, "c"));
+    }
+
+    public void testFailingConnectionStopsOthers() throws InterruptedException {
+        final RecordingConnection slow = new RecordingConnection();
+        slow.setDelay(20);
+        final RecordingConnection failing = new RecordingConnection();
+        failing.setFailure("fail");
+        final List<String> slowStatements = new ArrayList<String>();
+        for (int index = 0; index < 100; index++) {
+            slowStatements.add("statement " + index);
+        }
+        final List<Connection> conns = Arrays.asList(slow.getConnection(), failing.getConnection());
+        final List<List<String>> statements = Arrays.asList(slowStatements, Arrays.asList("ok", "fail", "never"));
+        try {
+            Utils.executeStatements(conns, statements);
+            fail("Expected the failing connection's failure");
+        } catch (SQLException ex) {
+            assertEquals("Failed: fail", ex.getMessage());
+        }
+        assertEquals(Arrays.asList("ok"), failing.getStatements());
+        //The slow connection stopped early, and had finished before the failure was thrown
+        final int executed = slow.getStatements().size();
+        assertTrue(String.valueOf(executed), executed < 100);
+        Thread.sleep(100);
+        assertEquals(executed, slow.getStatements().size());
+    }
+}
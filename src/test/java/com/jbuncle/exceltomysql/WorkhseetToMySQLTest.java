@@ -0,0 +1,205 @@
+/*
+ *  Copyright (c) 2013 James Buncle
+ * 
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ * 
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ * 
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ * 
+ */
+package com.jbuncle.exceltomysql;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.TestCase;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+
+/**
+ *
+ * @author James Buncle
+ */
+public class WorkhseetToMySQLTest extends TestCase {
+
+    public void testFormulaResults() {
+        final WorkhseetToMySQL worksheet = new WorkhseetToMySQL(createSheet("2+2", "\"no\"", "1=1"));
+        assertEquals("INSERT INTO `Data` (`num`,`txt`,`flag`) VALUES (4.0,'no',true);", worksheet.getInserts().get(1));
+    }
+
+    public void testErrorResultInNumericColumnFails() throws SQLException {
+        assertMismatch(createSheet("1/0", "\"no\"", "1=1"), "Cannot get a numeric value from a error cell");
+    }
+
+    public void testNumericResultInTextColumnFails() throws SQLException {
+        assertMismatch(createSheet("2+2", "2+2", "1=1"), "Cannot get a text value from a numeric cell");
+    }
+
+    public void testTextResultInBooleanColumnFails() throws SQLException {
+        assertMismatch(createSheet("2+2", "\"no\"", "\"no\""), "Cannot get a boolean value from a text cell");
+    }
+
+    public void testParallelMatchesSerial() throws SQLException {
+        final Workbook workbook = new HSSFWorkbook();
+        final Sheet sheet = workbook.createSheet("Data");
+        final Row headings = sheet.createRow(0);
+        headings.createCell(0).setCellValue("num");
+        headings.createCell(1).setCellValue("twice");
+        headings.createCell(2).setCellValue("txt");
+        for (int rowIndex = 1; rowIndex <= 500; rowIndex++) {
+            final Row row = sheet.createRow(rowIndex);
+            row.createCell(0).setCellValue(rowIndex);
+            if (rowIndex == 1) {
+                row.createCell(1).setCellValue(2);
+            } else {
+                row.createCell(1).setCellFormula("A" + (rowIndex + 1) + "*2");
+            }
+            row.createCell(2).setCellValue("row " + rowIndex);
+        }
+        final WorkhseetToMySQL worksheet = new WorkhseetToMySQL(sheet);
+        final List<String> serial = worksheet.getInserts();
+        assertEquals(500, serial.size());
+        assertEquals(serial, worksheet.getInsertsInParallel(7));
+        assertEquals(serial, worksheet.getInsertsInParallel(1000));
+        for (int chunkSize : new int[]{1, 7, 1000}) {
+            final RecordingConnection connection = new RecordingConnection();
+            worksheet.addDataToDatabase(connection.getConnection(), chunkSize);
+            assertEquals(serial, connection.getStatements());
+        }
+    }
+
+    public void testShardRouting() throws SQLException {
+        final Workbook workbook = new HSSFWorkbook();
+        final Sheet sheet = workbook.createSheet("Data");
+        final Row headings = sheet.createRow(0);
+        headings.createCell(0).setCellValue("key");
+        headings.createCell(1).setCellValue("num");
+        final String[] keys = {"a", "b", "c", "d", "e"};
+        for (int rowIndex = 1; rowIndex <= 50; rowIndex++) {
+            final Row row = sheet.createRow(rowIndex);
+            row.createCell(0).setCellValue(keys[rowIndex % keys.length]);
+            row.createCell(1).setCellValue(rowIndex);
+        }
+        //No key cell, and a blank key cell
+        sheet.createRow(51).createCell(1).setCellValue(51);
+        final Row blank = sheet.createRow(52);
+        blank.createCell(0);
+        blank.createCell(1).setCellValue(52);
+
+        final WorkhseetToMySQL worksheet = new WorkhseetToMySQL(sheet);
+        final List<List<String>> shards = worksheet.getShardedInserts("key", 3);
+        assertEquals(shards, worksheet.getShardedInserts("key", 3));
+        assertEquals(3, shards.size());
+        int total = 0;
+        for (int shard = 0; shard < shards.size(); shard++) {
+            for (final String insert : shards.get(shard)) {
+                for (final String key : keys) {
+                    if (insert.contains("VALUES ('" + key + "',")) {
+                        assertEquals(insert, ("'" + key + "'").hashCode() % 3, shard);
+                    }
+                }
+            }
+            total += shards.get(shard).size();
+        }
+        assertEquals(52, total);
+        assertTrue(shards.get(0).contains("INSERT INTO `Data` (`key`,`num`) VALUES (null,51.0);"));
+        assertTrue(shards.get(0).contains("INSERT INTO `Data` (`key`,`num`) VALUES ('',52.0);"));
+
+        final List<RecordingConnection> connections = new ArrayList<RecordingConnection>();
+        final List<Connection> conns = new ArrayList<Connection>();
+        for (int shard = 0; shard < 3; shard++) {
+            connections.add(new RecordingConnection());
+            conns.add(connections.get(shard).getConnection());
+        }
+        worksheet.addDataToDatabase("key", conns);
+        for (int shard = 0; shard < 3; shard++) {
+            final List<String> expected = new ArrayList<String>();
+            expected.add(worksheet.getDropStatement());
+            expected.add(worksheet.getCreateStatement().trim());
+            expected.addAll(shards.get(shard));
+            assertEquals(expected, connections.get(shard).getStatements());
+        }
+    }
+
+    public void testUnknownKeyColumn() throws SQLException {
+        final WorkhseetToMySQL worksheet = new WorkhseetToMySQL(createSheet("2+2", "\"no\"", "1=1"));
+        try {
+            worksheet.getShardedInserts("missing", 2);
+            fail("Expected an unknown key column");
+        } catch (IllegalArgumentException ex) {
+            assertEquals("Unknown key column: missing", ex.getMessage());
+        }
+        final RecordingConnection connection = new RecordingConnection();
+        try {
+            worksheet.addDataToDatabase("missing", Arrays.asList(connection.getConnection()));
+            fail("Expected an unknown key column");
+        } catch (IllegalArgumentException ex) {
+            assertEquals("Unknown key column: missing", ex.getMessage());
+        }
+        assertTrue(connection.getStatements().isEmpty());
+    }
+
+    private static void assertMismatch(Sheet sheet, String message) throws SQLException {
+        final WorkhseetToMySQL worksheet = new WorkhseetToMySQL(sheet);
+        try {
+            worksheet.getInserts();
+            fail("Expected a type mismatch");
+        } catch (IllegalStateException ex) {
+            assertEquals(message, ex.getMessage());
+        }
+        try {
+            worksheet.getInsertsInParallel(1);
+            fail("Expected a type mismatch");
+        } catch (IllegalStateException ex) {
+            assertEquals(message, ex.getMessage());
+        }
+        final RecordingConnection connection = new RecordingConnection();
+        try {
+            worksheet.addDataToDatabase(connection.getConnection(), 1);
+            fail("Expected a type mismatch");
+        } catch (IllegalStateException ex) {
+            assertEquals(message, ex.getMessage());
+        }
+        //Only the chunk before the failing row is written
+        assertEquals(1, connection.getStatements().size());
+    }
+
+    /**
+     * @return a sheet with numeric, text and boolean columns, and a second data
+     * row holding the given formulas
+     */
+    private static Sheet createSheet(String numFormula, String txtFormula, String flagFormula) {
+        final Workbook workbook = new HSSFWorkbook();
+        final Sheet sheet = workbook.createSheet("Data");
+        final Row headings = sheet.createRow(0);
+        headings.createCell(0).setCellValue("num");
+        headings.createCell(1).setCellValue("txt");
+        headings.createCell(2).setCellValue("flag");
+        final Row types = sheet.createRow(1);
+        types.createCell(0).setCellValue(1);
+        types.createCell(1).setCellValue("a");
+        types.createCell(2).setCellValue(true);
+        final Row formulas = sheet.createRow(2);
+        formulas.createCell(0).setCellFormula(numFormula);
+        formulas.createCell(1).setCellFormula(txtFormula);
+        formulas.createCell(2).setCellFormula(flagFormula);
+        return sheet;
+    }
+}
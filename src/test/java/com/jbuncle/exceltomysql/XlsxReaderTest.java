@@ -0,0 +1,375 @@
+/*
+ *  Copyright (c) 2013 James Buncle
+ * 
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ * 
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ * 
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ * 
+ */
+package com.jbuncle.exceltomysql;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author James Buncle
+ */
+public class XlsxReaderTest extends TestCase {
+
+    private static final String HEADINGS = "<row r=\"1\">"
+            + "<c r=\"A1\" t=\"inlineStr\"><is><t>Name</t></is></c>"
+            + "<c r=\"B1\" t=\"inlineStr\"><is><t>Value</t></is></c>"
+            + "<c r=\"C1\" t=\"inlineStr\"><is><t>Value</t></is></c>"
+            + "<c r=\"D1\" t=\"inlineStr\"><is><t>Value1</t></is></c>"
+            + "</row>";
+    private File file;
+
+    @Override
+    protected void setUp() throws IOException {
+        file = File.createTempFile("xlsxReaderTest", ".xlsx");
+    }
+
+    @Override
+    protected void tearDown() {
+        file.delete();
+    }
+
+    public void testStrings() throws IOException {
+        writeWorkbook(false, "<row r=\"1\">"
+                + "<c r=\"A1\" t=\"s\"><v>0</v></c>"
+                + "<c r=\"B1\" t=\"s\"><v>1</v></c>"
+                + "<c r=\"C1\" t=\"s\"><v>2</v></c>"
+                + "<c r=\"D1\" t=\"inlineStr\"><is><t>inline</t></is></c>"
+                + "<c r=\"E1\" t=\"inlineStr\"><is><r><t>rich </t></r><r><rPr><b/></rPr><t>inline</t></r>"
+                + "<rPh sb=\"0\" eb=\"1\"><t>ruby</t></rPh></is></c>"
+                + "<c r=\"F1\" t=\"str\"><f>A1&amp;\"!\"</f><v>plain!</v></c>"
+                + "</row>");
+        final XlsxReader reader = new XlsxReader(file);
+        try {
+            final XlsxRow row = readFirstRow(reader);
+            assertEquals("plain", row.getStringValue(0));
+            assertEquals("rich text", row.getStringValue(1));
+            assertEquals("東京", row.getStringValue(2));
+            assertEquals("inline", row.getStringValue(3));
+            assertEquals("rich inline", row.getStringValue(4));
+            assertEquals("plain!", row.getStringValue(5));
+            for (int column = 0; column < 6; column++) {
+                assertEquals(ExcelType.STRING, row.getType(column));
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testSharedStringsInDirectMemory() throws IOException {
+        writeWorkbook(false, "<row r=\"1\"><c r=\"A1\" t=\"s\"><v>2</v></c></row>");
+        final XlsxReader reader = new XlsxReader(file, null);
+        try {
+            assertEquals("東京", readFirstRow(reader).getStringValue(0));
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testDateStyles() throws IOException {
+        writeWorkbook(false, "<row r=\"1\">"
+                + "<c r=\"A1\" s=\"1\"><v>41275</v></c>"
+                + "<c r=\"B1\" s=\"2\"><v>41275.5</v></c>"
+                + "<c r=\"C1\" s=\"3\"><v>41275</v></c>"
+                + "<c r=\"D1\"><v>41275</v></c>"
+                + "<c r=\"E1\" t=\"b\"><v>1</v></c>"
+                + "</row>");
+        final XlsxReader reader = new XlsxReader(file);
+        try {
+            final XlsxRow row = readFirstRow(reader);
+            assertEquals(ExcelType.DATE, row.getType(0));
+            assertEquals(ExcelType.DATE, row.getType(1));
+            assertEquals(ExcelType.NUMERIC, row.getType(2));
+            assertEquals(ExcelType.NUMERIC, row.getType(3));
+            assertEquals(ExcelType.BOOLEAN, row.getType(4));
+            assertEquals("'2013-01-01 00:00'", Utils.toSqlDate(row.getDateValue(0)));
+            assertEquals("'2013-01-01 12:00'", Utils.toSqlDate(row.getDateValue(1)));
+            assertTrue(row.getBooleanValue(4));
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testDate1904() throws IOException {
+        writeWorkbook(true, "<row r=\"1\"><c r=\"A1\" s=\"1\"><v>39813</v></c></row>");
+        final XlsxReader reader = new XlsxReader(file);
+        try {
+            assertEquals("'2013-01-01 00:00'", Utils.toSqlDate(readFirstRow(reader).getDateValue(0)));
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testErrorsAndUncalculatedFormulas() throws IOException {
+        writeWorkbook(false, "<row r=\"1\">"
+                + "<c r=\"A1\" t=\"e\"><f>1/0</f><v>#DIV/0!</v></c>"
+                + "<c r=\"B1\"><f>1+1</f></c>"
+                + "<c r=\"C1\"><f>1+1</f><v>2</v></c>"
+                + "</row>");
+        final XlsxReader reader = new XlsxReader(file);
+        try {
+            final XlsxRow row = readFirstRow(reader);
+            assertTrue(row.isError(0));
+            assertTrue(row.isError(1));
+            assertFalse(row.isError(2));
+            assertNull(row.getType(0));
+            assertNull(row.getType(1));
+            assertEquals(2.0, row.getNumericValue(2));
+            try {
+                row.getNumericValue(0);
+                fail("Expected the error cell to fail");
+            } catch (IllegalStateException ex) {
+                assertEquals("Cannot get a numeric value from error cell 0 of row 0: #DIV/0!", ex.getMessage());
+            }
+            try {
+                row.getNumericValue(1);
+                fail("Expected the uncalculated formula to fail");
+            } catch (IllegalStateException ex) {
+                assertEquals("Cannot get a numeric value from cell 1 of row 0, its formula has no cached result", ex.getMessage());
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testColumnNaming() throws IOException {
+        writeWorkbook(false, HEADINGS + "<row r=\"2\">"
+                + "<c r=\"A2\" t=\"inlineStr\"><is><t>a</t></is></c>"
+                + "<c r=\"B2\"><v>1</v></c>"
+                + "<c r=\"C2\"><v>2</v></c>"
+                + "<c r=\"D2\"><v>3</v></c>"
+                + "</row>");
+        final XlsxReader reader = new XlsxReader(file);
+        try {
+            final String create = new XlsxSheetToMySQL(reader, "Sheet 1").getCreateStatement();
+            assertEquals("CREATE TABLE IF NOT EXISTS `Sheet1` (\n"
+                    + "\t`Sheet1ID` int(11) NOT NULL AUTO_INCREMENT, \n"
+                    + "\t`Name` LONGTEXT DEFAULT NULL, \n"
+                    + "\t`Value` FLOAT DEFAULT NULL, \n"
+                    + "\t`Value1` FLOAT DEFAULT NULL, \n"
+                    + "\t`Value11` FLOAT DEFAULT NULL, \n"
+                    + "\tPRIMARY KEY (`Sheet1ID`)\n"
+                    + ");\n", create);
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testProjectedColumns() throws IOException, SQLException {
+        writeWorkbook(false, HEADINGS + "<row r=\"2\">"
+                + "<c r=\"A2\" t=\"inlineStr\"><is><t>it's</t></is></c>"
+                + "<c r=\"B2\"><v>1</v></c>"
+                + "<c r=\"C2\" t=\"e\"><v>#N/A</v></c>"
+                + "<c r=\"D2\"><v>3</v></c>"
+                + "</row>");
+        final XlsxReader reader = new XlsxReader(file);
+        try {
+            final XlsxSheetToMySQL sheet = new XlsxSheetToMySQL(reader, "Sheet 1", new SheetPathFilter("Sheet1.Name", "Sheet1.Value"));
+            final RecordingConnection conn = new RecordingConnection();
+            sheet.addDataToDatabase(conn.getConnection());
+            assertEquals("INSERT INTO `Sheet1` (`Name`,`Value`) VALUES ('it\\'s',1.0);", conn.getStatements().get(0));
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testStrictFailsOnErrorCells() throws IOException, SQLException {
+        writeWorkbook(false, HEADINGS + "<row r=\"2\">"
+                + "<c r=\"A2\" t=\"inlineStr\"><is><t>a</t></is></c>"
+                + "<c r=\"B2\"><v>1</v></c>"
+                + "<c r=\"C2\"><v>2</v></c>"
+                + "<c r=\"D2\"><v>3</v></c>"
+                + "</row><row r=\"3\">"
+                + "<c r=\"A3\" t=\"inlineStr\"><is><t>b</t></is></c>"
+                + "<c r=\"B3\" t=\"e\"><v>#REF!</v></c>"
+                + "<c r=\"C3\"><f>B3*2</f></c>"
+                + "<c r=\"D3\"><v>3</v></c>"
+                + "</row>");
+        final XlsxReader reader = new XlsxReader(file);
+        try {
+            final XlsxSheetToMySQL sheet = new XlsxSheetToMySQL(reader, "Sheet 1");
+            try {
+                sheet.addDataToDatabase(new RecordingConnection().getConnection());
+                fail("Expected the error cell to fail");
+            } catch (RuntimeException ex) {
+                assertEquals("Failed to process cell value of column:row 1:2, expecting type: NUMERIC", ex.getMessage());
+            }
+            sheet.setStrict(false);
+            final RecordingConnection conn = new RecordingConnection();
+            sheet.addDataToDatabase(conn.getConnection());
+            final List<String> statements = conn.getStatements();
+            assertEquals("INSERT INTO `Sheet1` (`Name`,`Value`,`Value1`,`Value11`) VALUES ('a',1.0,2.0,3.0);", statements.get(0));
+            assertEquals("INSERT INTO `Sheet1` (`Name`,`Value11`) VALUES ('b',3.0);", statements.get(1));
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testExcelToMySQLStreamsXlsx() throws IOException, SQLException {
+        writeWorkbook(false, HEADINGS + "<row r=\"2\">"
+                + "<c r=\"A2\" t=\"inlineStr\"><is><t>a</t></is></c>"
+                + "<c r=\"B2\"><v>1</v></c>"
+                + "<c r=\"C2\"><v>2</v></c>"
+                + "<c r=\"D2\"><v>3</v></c>"
+                + "</row>");
+        final ExcelToMySQL excelToMySQL = new ExcelToMySQL();
+        excelToMySQL.setLoadMode(LoadMode.PUBLISH);
+        excelToMySQL.addIndex("Sheet1.Value1");
+        final RecordingConnection conn = new RecordingConnection();
+        excelToMySQL.addWorkbook(conn.getConnection(), file);
+
+        final List<String> statements = conn.getStatements();
+        assertEquals("DROP TABLE IF EXISTS `Sheet1__loading`;", statements.get(0));
+        assertTrue(statements.get(1).startsWith("CREATE TABLE IF NOT EXISTS `Sheet1__loading` (\n\t`Sheet1ID`"));
+        assertEquals("INSERT INTO `Sheet1__loading` (`Name`,`Value`,`Value1`,`Value11`) VALUES ('a',1.0,2.0,3.0);", statements.get(2));
+        assertEquals("ALTER TABLE `Sheet1__loading` ADD INDEX `Value1` (`Value1`);", statements.get(3));
+        assertEquals("RENAME TABLE `Sheet1` TO `Sheet1__old`, `Sheet1__loading` TO `Sheet1`;", statements.get(6));
+        assertEquals(8, statements.size());
+    }
+
+    /**
+     * The streaming path must load the same rows as the POI path, including
+     * text columns holding numbers and booleans, blank type cells, padded and
+     * empty text
+     */
+    public void testSameStatementsAsPoi() throws IOException, SQLException {
+        //POI 3.5 only reads shared strings, as saved by Excel
+        writeWorkbook(false, "<row r=\"1\">"
+                + "<c r=\"A1\" t=\"s\"><v>0</v></c>"
+                + "<c r=\"B1\" t=\"s\"><v>1</v></c>"
+                + "<c r=\"C1\" t=\"s\"><v>2</v></c>"
+                + "<c r=\"D1\" t=\"s\"><v>3</v></c>"
+                + "<c r=\"E1\" t=\"s\"><v>4</v></c>"
+                + "<c r=\"F1\" t=\"s\"><v>5</v></c>"
+                + "</row><row r=\"2\">"
+                + "<c r=\"A2\" t=\"s\"><v>6</v></c>"
+                + "<c r=\"B2\" t=\"s\"><v>7</v></c>"
+                + "<c r=\"C2\"/>"
+                + "<c r=\"D2\"><v>1.5</v></c>"
+                + "<c r=\"E2\" s=\"1\"><v>41275.5</v></c>"
+                + "<c r=\"F2\" t=\"b\"><v>1</v></c>"
+                + "</row><row r=\"3\">"
+                + "<c r=\"A3\"><v>123</v></c>"
+                + "<c r=\"B3\" t=\"s\"><v>8</v></c>"
+                + "<c r=\"C3\" t=\"s\"><v>9</v></c>"
+                + "<c r=\"D3\"><f>1+1</f><v>2</v></c>"
+                + "<c r=\"E3\" s=\"2\"><v>41276</v></c>"
+                + "<c r=\"F3\" t=\"b\"><v>0</v></c>"
+                + "</row><row r=\"4\">"
+                + "<c r=\"A4\" t=\"b\"><v>1</v></c>"
+                + "<c r=\"B4\" t=\"s\"><v>6</v></c>"
+                + "<c r=\"C4\" t=\"s\"><v>10</v></c>"
+                + "</row>",
+                "Code", "Name", "Note", "Amount", "When", "Flag", "plain", "  it's  ", "", "text", " x ");
+        final RecordingConnection streamed = new RecordingConnection();
+        new ExcelToMySQL().addWorkbook(streamed.getConnection(), file);
+        final RecordingConnection loaded = new RecordingConnection();
+        new ExcelToMySQL().addWorkbook(loaded.getConnection(), Utils.createWorkbook(file));
+
+        assertEquals(loaded.getStatements(), streamed.getStatements());
+        final List<String> statements = streamed.getStatements();
+        assertTrue(statements.get(1).contains("`Note` LONGTEXT"));
+        assertEquals("INSERT INTO `Sheet1` (`Code`,`Name`,`Amount`,`When`,`Flag`) VALUES ('plain','it\\'s',1.5,'2013-01-01 12:00',true);", statements.get(2));
+        assertEquals("INSERT INTO `Sheet1` (`Code`,`Note`,`Amount`,`When`,`Flag`) VALUES ('123.0','text',2.0,'2013-01-02 00:00',false);", statements.get(3));
+        assertEquals("INSERT INTO `Sheet1` (`Code`,`Name`,`Note`) VALUES ('true','plain','x');", statements.get(4));
+    }
+
+    private static XlsxRow readFirstRow(XlsxReader reader) throws IOException {
+        final XlsxSheetReader sheet = reader.openSheet("Sheet 1");
+        try {
+            return sheet.nextRow();
+        } finally {
+            sheet.close();
+        }
+    }
+
+    /**
+     * Writes a single sheet workbook with the given sheet data. Style 1 has
+     * the built in date format 14, style 2 a custom date format and style 3 a
+     * custom number format
+     */
+    private void writeWorkbook(boolean date1904, String sheetData) throws IOException {
+        writePackage(date1904, sheetData, "<si><t>plain</t></si>"
+                + "<si><r><t xml:space=\"preserve\">rich </t></r><r><rPr><i/></rPr><t>text</t></r></si>"
+                + "<si><t>東京</t><rPh sb=\"0\" eb=\"2\"><t>トウキョウ</t></rPh><phoneticPr fontId=\"1\"/></si>");
+    }
+
+    private void writeWorkbook(boolean date1904, String sheetData, String... sharedStrings) throws IOException {
+        final StringBuilder items = new StringBuilder();
+        for (String sharedString : sharedStrings) {
+            items.append("<si><t xml:space=\"preserve\">").append(sharedString.replace("&", "&amp;").replace("<", "&lt;")).append("</t></si>");
+        }
+        writePackage(date1904, sheetData, items.toString());
+    }
+
+    private void writePackage(boolean date1904, String sheetData, String sharedStrings) throws IOException {
+        final ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            writePart(zip, "[Content_Types].xml", "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+                    + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+                    + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+                    + "<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>"
+                    + "<Override PartName=\"/xl/worksheets/sheet1.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>"
+                    + "<Override PartName=\"/xl/styles.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>"
+                    + "<Override PartName=\"/xl/sharedStrings.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sharedStrings+xml\"/>"
+                    + "</Types>");
+            writePart(zip, "_rels/.rels", "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+                    + "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument\" Target=\"xl/workbook.xml\"/>"
+                    + "</Relationships>");
+            writePart(zip, "xl/_rels/workbook.xml.rels", "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+                    + "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/worksheet\" Target=\"worksheets/sheet1.xml\"/>"
+                    + "<Relationship Id=\"rId2\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/styles\" Target=\"styles.xml\"/>"
+                    + "<Relationship Id=\"rId3\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/sharedStrings\" Target=\"sharedStrings.xml\"/>"
+                    + "</Relationships>");
+            writePart(zip, "xl/workbook.xml", "<workbook xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\""
+                    + " xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\">"
+                    + "<workbookPr date1904=\"" + (date1904 ? 1 : 0) + "\"/>"
+                    + "<sheets><sheet name=\"Sheet 1\" sheetId=\"1\" r:id=\"rId1\"/></sheets>"
+                    + "</workbook>");
+            writePart(zip, "xl/styles.xml", "<styleSheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">"
+                    + "<numFmts count=\"2\"><numFmt numFmtId=\"164\" formatCode=\"yyyy-mm-dd hh:mm\"/><numFmt numFmtId=\"165\" formatCode=\"#,##0.000\"/></numFmts>"
+                    + "<cellStyleXfs count=\"1\"><xf numFmtId=\"14\"/></cellStyleXfs>"
+                    + "<cellXfs count=\"4\"><xf numFmtId=\"0\"/><xf numFmtId=\"14\"/><xf numFmtId=\"164\"/><xf numFmtId=\"165\"/></cellXfs>"
+                    + "</styleSheet>");
+            writePart(zip, "xl/sharedStrings.xml", "<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">"
+                    + sharedStrings + "</sst>");
+            writePart(zip, "xl/worksheets/sheet1.xml", "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">"
+                    + "<sheetData>" + sheetData + "</sheetData>"
+                    + "</worksheet>");
+        } finally {
+            zip.close();
+        }
+    }
+
+    private static void writePart(ZipOutputStream zip, String name, String xml) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n" + xml).getBytes("UTF-8"));
+        zip.closeEntry();
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ *  Copyright (c) 2013 James Buncle
+ * 
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ * 
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ * 
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ * 
+ */
+package com.jbuncle.exceltomysql.loadtest;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+
+/**
+ * Stand-in for a MySQL connection which executes nothing, it only counts the
+ * statements and bytes sent to it and how long the caller took between each
+ * statement. As nothing is executed, the time between inserts is the time the
+ * caller took to convert each row. Metadata queries report no existing tables.
+ *
+ * @author James Buncle
+ */
+public class CountingConnection {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private final Connection connection;
+    private long statementCount;
+    private long byteCount;
+    /**
+     * Nanoseconds between the end of each statement and the one before it
+     */
+    private long[] latencies;
+    private long lastStatement;
+
+    public CountingConnection() {
+        this.connection = (Connection) createProxy(Connection.class, new ConnectionHandler());
+        this.latencies = new long[1024];
+        reset();
+    }
+
+    /**
+     * @return the JDBC connection to pass to the code under test
+     */
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Clears the counts and starts timing the first statement from now
+     */
+    public synchronized void reset() {
+        statementCount = 0;
+        byteCount = 0;
+        lastStatement = System.nanoTime();
+    }
+
+    public synchronized long getStatementCount() {
+        return statementCount;
+    }
+
+    public synchronized long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * @param percentile percentile between 0 and 100
+     * @return the time the caller took to produce a statement at the
+     * percentile in nanoseconds, 0 if there were no statements
+     */
+    public synchronized long getLatencyPercentile(double percentile) {
+        final int count = (int) Math.min(statementCount, latencies.length);
+        if (count == 0) {
+            return 0;
+        }
+        final long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        final int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    private synchronized void record(String sql) {
+        final long now = System.nanoTime();
+        if (statementCount >= latencies.length) {
+            latencies = Arrays.copyOf(latencies, latencies.length * 2);
+        }
+        latencies[(int) statementCount] = now - lastStatement;
+        lastStatement = now;
+        statementCount++;
+        byteCount += sql.getBytes(UTF8).length;
+    }
+
+    private static Object createProxy(Class<?> type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(CountingConnection.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    /**
+     * @return the value returned by an unimplemented method
+     */
+    private static Object getDefault(Method method) {
+        final Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == short.class) {
+            return (short) 0;
+        } else if (type == byte.class) {
+            return (byte) 0;
+        } else if (type == double.class) {
+            return 0d;
+        } else if (type == float.class) {
+            return 0f;
+        } else if (type == int[].class) {
+            return new int[0];
+        } else if (type == long[].class) {
+            return new long[0];
+        }
+        return null;
+    }
+
+    private static Object handleObjectMethod(Object proxy, Method method, Object[] args) {
+        if (method.getName().equals("equals")) {
+            return proxy == args[0];
+        } else if (method.getName().equals("hashCode")) {
+            return System.identityHashCode(proxy);
+        }
+        return proxy.getClass().getInterfaces()[0].getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+    }
+
+    private class ConnectionHandler implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (method.getDeclaringClass() == Object.class) {
+                return handleObjectMethod(proxy, method, args);
+            }
+            final String name = method.getName();
+            if (name.equals("createStatement") || name.equals("prepareStatement")) {
+                final String sql = name.equals("prepareStatement") ? (String) args[0] : null;
+                return createProxy(method.getReturnType(), new StatementHandler(sql));
+            } else if (name.equals("getMetaData")) {
+                return createProxy(DatabaseMetaData.class, new MetaDataHandler());
+            } else if (name.equals("isValid") || name.equals("getAutoCommit")) {
+                return true;
+            }
+            return getDefault(method);
+        }
+    }
+
+    private class StatementHandler implements InvocationHandler {
+
+        /**
+         * SQL of a prepared statement, or null for a plain statement
+         */
+        private final String preparedSql;
+        private int batchSize;
+
+        StatementHandler(String preparedSql) {
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (method.getDeclaringClass() == Object.class) {
+                return handleObjectMethod(proxy, method, args);
+            }
+            final String name = method.getName();
+            if (name.startsWith("execute") && !name.equals("executeBatch")) {
+                record(args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : preparedSql);
+                if (name.equals("executeQuery")) {
+                    return createProxy(ResultSet.class, new EmptyResultSetHandler());
+                }
+            } else if (name.equals("addBatch")) {
+                final String sql = args != null && args.length > 0 ? (String) args[0] : preparedSql;
+                synchronized (CountingConnection.this) {
+                    byteCount += sql.getBytes(UTF8).length;
+                }
+                batchSize++;
+            } else if (name.equals("executeBatch")) {
+                record("");
+                final int[] result = new int[batchSize];
+                Arrays.fill(result, 1);
+                batchSize = 0;
+                return result;
+            } else if (name.equals("getConnection")) {
+                return connection;
+            } else if (name.equals("getUpdateCount")) {
+                return -1;
+            }
+            return getDefault(method);
+        }
+    }
+
+    private static class MetaDataHandler implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (method.getDeclaringClass() == Object.class) {
+                return handleObjectMethod(proxy, method, args);
+            }
+            if (method.getReturnType() == ResultSet.class) {
+                return createProxy(ResultSet.class, new EmptyResultSetHandler());
+            }
+            return getDefault(method);
+        }
+    }
+
+    private static class EmptyResultSetHandler implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (method.getDeclaringClass() == Object.class) {
+                return handleObjectMethod(proxy, method, args);
+            }
+            return getDefault(method);
+        }
+    }
+}
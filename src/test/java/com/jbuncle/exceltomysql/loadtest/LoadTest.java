@@ -0,0 +1,284 @@
+/*
+ *  Copyright (c) 2013 James Buncle
+ * 
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ * 
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ * 
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ * 
+ */
+package com.jbuncle.exceltomysql.loadtest;
+
+import com.jbuncle.exceltomysql.ExcelToMySQL;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs full imports of generated workbooks through {@link ExcelToMySQL}
+ * against a {@link CountingConnection}, so throughput can be measured without
+ * a MySQL server.
+ *
+ * Each argument is one or more whitespace separated configurations of comma
+ * separated settings, for example
+ * "format=xlsx,rows=10000,columns=20,types=4:4:1:1,formulas=0.1,strings=500".
+ * Workbooks are generated in this JVM and each is imported in a JVM of its
+ * own, so the reported peak memory only covers that import.
+ *
+ * @author James Buncle
+ */
+public class LoadTest {
+
+    private static final String[] DEFAULT_CONFIGURATIONS = {
+        "format=xls,rows=10000,columns=20",
+        "format=xlsx,rows=10000,columns=20",
+        "format=xlsx,rows=10000,columns=20,formulas=0.5",
+        "format=xlsx,rows=2000,columns=200,strings=100000"
+    };
+
+    private static final String IMPORT = "--import";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 3 && args[0].equals(IMPORT)) {
+            System.out.println(importWorkbook(new File(args[1]), Integer.parseInt(args[2])));
+            return;
+        }
+        //Arguments may hold several whitespace separated configurations
+        final List<String> configurations = new ArrayList<String>();
+        for (String arg : args) {
+            for (String configuration : arg.trim().split("\\s+")) {
+                if (!configuration.isEmpty()) {
+                    //Fail on a bad configuration before running any
+                    parseConfiguration(configuration);
+                    configurations.add(configuration);
+                }
+            }
+        }
+        if (configurations.isEmpty()) {
+            configurations.addAll(Arrays.asList(DEFAULT_CONFIGURATIONS));
+        }
+        System.out.println("configuration | generate s | import s | rows/s | statements | MB sent | p50 row conversion ms | p99 row conversion ms | GC ms | peak RSS MB");
+        for (String configuration : configurations) {
+            System.out.println(run(parseConfiguration(configuration)));
+        }
+    }
+
+    /**
+     * Generates the configured workbook in this JVM, then imports it in a new
+     * one so the import's peak RSS doesn't include the generation
+     *
+     * @param generator the workbook configuration
+     * @return a report line for the configuration
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public static String run(WorkbookGenerator generator) throws IOException, InterruptedException {
+        final File file = File.createTempFile("loadtest", generator.isXlsx() ? ".xlsx" : ".xls");
+        try {
+            final long start = System.nanoTime();
+            generator.generate(file);
+            final long generateTime = System.nanoTime() - start;
+            return generator
+                    + " | " + seconds(generateTime)
+                    + " | " + fork(file, generator.getRows());
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Imports a workbook in a new JVM, with the same class path and JVM
+     * options as this one
+     *
+     * @param file the workbook to import
+     * @param rows number of data rows in the workbook
+     * @return the import's part of the report line
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private static String fork(File file, int rows) throws IOException, InterruptedException {
+        final List<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(LoadTest.class.getName());
+        command.add(IMPORT);
+        command.add(file.getPath());
+        command.add(String.valueOf(rows));
+        final Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        process.getOutputStream().close();
+        String report = null;
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                report = line;
+            }
+        } finally {
+            reader.close();
+        }
+        final int exitCode = process.waitFor();
+        if (exitCode != 0 || report == null) {
+            throw new IOException("Load test import of " + file + " failed with exit code " + exitCode);
+        }
+        return report;
+    }
+
+    /**
+     * Imports a workbook. The peak RSS covers the life of the JVM, so this is
+     * run in a JVM of its own
+     *
+     * @param file the workbook to import
+     * @param rows number of data rows in the workbook
+     * @return the import's part of the report line
+     * @throws IOException
+     * @throws SQLException
+     */
+    static String importWorkbook(File file, int rows) throws IOException, SQLException {
+        resetPeakUsage();
+        final long gcStart = getGarbageCollectionTime();
+        final CountingConnection connection = new CountingConnection();
+        final PrintStream console = System.out;
+        //ExcelToMySQL echoes every statement, which would dominate the timings
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+        final long start = System.nanoTime();
+        try {
+            connection.reset();
+            new ExcelToMySQL().addWorkbook(connection.getConnection(), file);
+        } finally {
+            System.setOut(console);
+        }
+        final long importTime = System.nanoTime() - start;
+        final long gcTime = getGarbageCollectionTime() - gcStart;
+
+        return seconds(importTime)
+                + " | " + Math.round(rows / (importTime / 1e9))
+                + " | " + connection.getStatementCount()
+                + " | " + String.format("%.1f", connection.getByteCount() / 1048576d)
+                + " | " + String.format("%.3f", connection.getLatencyPercentile(50) / 1e6)
+                + " | " + String.format("%.3f", connection.getLatencyPercentile(99) / 1e6)
+                + " | " + gcTime
+                + " | " + getPeakMemory() / 1048576;
+    }
+
+    /**
+     * @param configuration comma separated name=value settings
+     * @return a generator for the configuration
+     */
+    static WorkbookGenerator parseConfiguration(String configuration) {
+        final WorkbookGenerator generator = new WorkbookGenerator();
+        for (String setting : configuration.split(",")) {
+            final String[] parts = setting.split("=", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected name=value, got: " + setting);
+            }
+            final String name = parts[0].trim();
+            final String value = parts[1].trim();
+            if (name.equals("format")) {
+                generator.setXlsx(value.equals("xlsx"));
+            } else if (name.equals("rows")) {
+                generator.setRows(Integer.parseInt(value));
+            } else if (name.equals("columns")) {
+                generator.setColumns(Integer.parseInt(value));
+            } else if (name.equals("types")) {
+                final String[] weights = value.split(":");
+                if (weights.length != 4) {
+                    throw new IllegalArgumentException("Expected string:numeric:date:boolean type weights, got: " + value);
+                }
+                generator.setTypeWeights(Integer.parseInt(weights[0]), Integer.parseInt(weights[1]),
+                        Integer.parseInt(weights[2]), Integer.parseInt(weights[3]));
+            } else if (name.equals("formulas")) {
+                generator.setFormulaDensity(Double.parseDouble(value));
+            } else if (name.equals("strings")) {
+                generator.setStringCardinality(Integer.parseInt(value));
+            } else if (name.equals("seed")) {
+                generator.setSeed(Long.parseLong(value));
+            } else {
+                throw new IllegalArgumentException("Unknown setting: " + name);
+            }
+        }
+        return generator;
+    }
+
+    private static String seconds(long nanos) {
+        return String.format("%.2f", nanos / 1e9);
+    }
+
+    private static long getGarbageCollectionTime() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, collector.getCollectionTime());
+        }
+        return total;
+    }
+
+    private static void resetPeakUsage() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+    }
+
+    /**
+     * @return the peak resident set size of the process where the platform
+     * reports it, otherwise the sum of the peak usage of each memory pool since
+     * the last reset
+     */
+    private static long getPeakMemory() {
+        final File status = new File("/proc/self/status");
+        if (status.canRead()) {
+            try {
+                final BufferedReader reader = new BufferedReader(new FileReader(status));
+                try {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.startsWith("VmHWM:")) {
+                            return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+                        }
+                    }
+                } finally {
+                    reader.close();
+                }
+            } catch (IOException ex) {
+                //Fall back to the memory pools
+            }
+        }
+        long total = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            total += pool.getPeakUsage().getUsed();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ *  Copyright (c) 2013 James Buncle
+ * 
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ * 
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ * 
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ * 
+ */
+package com.jbuncle.exceltomysql.loadtest;
+
+import com.jbuncle.exceltomysql.ExcelType;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Date;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+/**
+ * Generates synthetic workbooks for load testing. The first row holds the
+ * column headings and every following row is data, the first data row never
+ * holds formulas so that column types can be detected from it. Formula results
+ * are cached in the workbook, as Excel saves them.
+ *
+ * @author James Buncle
+ */
+public class WorkbookGenerator {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+    private static final String SPREADSHEET = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final String OFFICE_DOCUMENT = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String RELATIONSHIPS = "http://schemas.openxmlformats.org/package/2006/relationships";
+    private static final String DATE_FORMAT = "yyyy-mm-dd hh:mm";
+    private static final int MAX_XLS_ROWS = 65536;
+    private static final int MAX_XLS_COLUMNS = 256;
+    /**
+     * Column types in the order of the type weights
+     */
+    private static final ExcelType[] WEIGHTED_TYPES = {ExcelType.STRING, ExcelType.NUMERIC, ExcelType.DATE, ExcelType.BOOLEAN};
+    private int rows;
+    private int columns;
+    private boolean xlsx;
+    /**
+     * Relative weights of string, numeric, date and boolean columns
+     */
+    private int[] typeWeights;
+    private double formulaDensity;
+    private int stringCardinality;
+    private long seed;
+
+    public WorkbookGenerator() {
+        this.rows = 1000;
+        this.columns = 10;
+        this.xlsx = true;
+        this.typeWeights = new int[]{4, 4, 1, 1};
+        this.formulaDensity = 0;
+        this.stringCardinality = 1000;
+        this.seed = 1;
+    }
+
+    /**
+     * @param rows number of data rows, not including the headings
+     */
+    public void setRows(int rows) {
+        this.rows = rows;
+    }
+
+    public void setColumns(int columns) {
+        this.columns = columns;
+    }
+
+    /**
+     * @param xlsx true to generate .xlsx workbooks, false for .xls
+     */
+    public void setXlsx(boolean xlsx) {
+        this.xlsx = xlsx;
+    }
+
+    /**
+     * Sets the relative number of each type of column
+     *
+     * @param string weight of string columns
+     * @param numeric weight of numeric columns
+     * @param date weight of date columns
+     * @param bool weight of boolean columns
+     */
+    public void setTypeWeights(int string, int numeric, int date, int bool) {
+        if (string < 0 || numeric < 0 || date < 0 || bool < 0 || string + numeric + date + bool == 0) {
+            throw new IllegalArgumentException("Type weights must not be negative and must not all be zero");
+        }
+        this.typeWeights = new int[]{string, numeric, date, bool};
+    }
+
+    /**
+     * @param formulaDensity fraction of numeric cells which are formulas
+     */
+    public void setFormulaDensity(double formulaDensity) {
+        this.formulaDensity = formulaDensity;
+    }
+
+    /**
+     * @param stringCardinality number of distinct values in string cells
+     */
+    public void setStringCardinality(int stringCardinality) {
+        this.stringCardinality = Math.max(1, stringCardinality);
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public boolean isXlsx() {
+        return xlsx;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Generates a workbook with a single sheet and writes it to the file.
+     * .xlsx workbooks are streamed straight into the zip file, so their size
+     * isn't limited by the heap
+     *
+     * @param file file to write the workbook to
+     * @throws IOException
+     */
+    public void generate(File file) throws IOException {
+        if (xlsx) {
+            writeXlsx(file);
+            return;
+        }
+        final Workbook workbook = generate();
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            workbook.write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Builds the workbook in memory with the POI usermodel. The cells are the
+     * same as those written by {@link #generate(File)}
+     *
+     * @return a workbook with a single sheet named "LoadTest"
+     */
+    public Workbook generate() {
+        if (!xlsx && (rows + 1 > MAX_XLS_ROWS || columns > MAX_XLS_COLUMNS)) {
+            throw new IllegalArgumentException(".xls workbooks are limited to " + MAX_XLS_ROWS + " rows and " + MAX_XLS_COLUMNS + " columns");
+        }
+        final Workbook workbook = xlsx ? new XSSFWorkbook() : new HSSFWorkbook();
+        final Sheet sheet = workbook.createSheet("LoadTest");
+        final FormulaEvaluator evaluator = workbook.getCreationHelper().createFormulaEvaluator();
+        final CellStyle dateStyle = workbook.createCellStyle();
+        dateStyle.setDataFormat(workbook.createDataFormat().getFormat(DATE_FORMAT));
+
+        final CellValues cells = new CellValues();
+        final Row headings = sheet.createRow(0);
+        for (int column = 0; column < columns; column++) {
+            headings.createCell(column).setCellValue(cells.getHeading(column));
+        }
+        for (int rowIndex = 1; rowIndex <= rows; rowIndex++) {
+            final Row row = sheet.createRow(rowIndex);
+            cells.nextRow(rowIndex);
+            for (int column = 0; column < columns; column++) {
+                final Cell cell = row.createCell(column);
+                final Object value = cells.values[column];
+                if (cells.formulas[column] != null) {
+                    cell.setCellFormula(cells.formulas[column]);
+                    evaluator.evaluateFormulaCell(cell);
+                } else if (value instanceof String) {
+                    cell.setCellValue((String) value);
+                } else if (value instanceof Double) {
+                    cell.setCellValue((Double) value);
+                } else if (value instanceof Date) {
+                    cell.setCellValue((Date) value);
+                    cell.setCellStyle(dateStyle);
+                } else {
+                    cell.setCellValue((Boolean) value);
+                }
+            }
+        }
+        return workbook;
+    }
+
+    /**
+     * Writes the .xlsx parts directly, one row of sheet XML at a time. Strings
+     * are shared and formulas have their cached results, as Excel saves them
+     */
+    private void writeXlsx(File file) throws IOException {
+        final ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            final Writer out = new BufferedWriter(new OutputStreamWriter(zip, UTF8));
+            writePart(zip, out, "[Content_Types].xml", "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+                    + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+                    + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+                    + "<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>"
+                    + "<Override PartName=\"/xl/worksheets/sheet1.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>"
+                    + "<Override PartName=\"/xl/styles.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>"
+                    + "<Override PartName=\"/xl/sharedStrings.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sharedStrings+xml\"/>"
+                    + "</Types>");
+            writePart(zip, out, "_rels/.rels", "<Relationships xmlns=\"" + RELATIONSHIPS + "\">"
+                    + "<Relationship Id=\"rId1\" Type=\"" + OFFICE_DOCUMENT + "/officeDocument\" Target=\"xl/workbook.xml\"/>"
+                    + "</Relationships>");
+            writePart(zip, out, "xl/_rels/workbook.xml.rels", "<Relationships xmlns=\"" + RELATIONSHIPS + "\">"
+                    + "<Relationship Id=\"rId1\" Type=\"" + OFFICE_DOCUMENT + "/worksheet\" Target=\"worksheets/sheet1.xml\"/>"
+                    + "<Relationship Id=\"rId2\" Type=\"" + OFFICE_DOCUMENT + "/styles\" Target=\"styles.xml\"/>"
+                    + "<Relationship Id=\"rId3\" Type=\"" + OFFICE_DOCUMENT + "/sharedStrings\" Target=\"sharedStrings.xml\"/>"
+                    + "</Relationships>");
+            writePart(zip, out, "xl/workbook.xml", "<workbook xmlns=\"" + SPREADSHEET + "\" xmlns:r=\"" + OFFICE_DOCUMENT + "\">"
+                    + "<sheets><sheet name=\"LoadTest\" sheetId=\"1\" r:id=\"rId1\"/></sheets>"
+                    + "</workbook>");
+            writePart(zip, out, "xl/styles.xml", "<styleSheet xmlns=\"" + SPREADSHEET + "\">"
+                    + "<numFmts count=\"1\"><numFmt numFmtId=\"164\" formatCode=\"" + DATE_FORMAT + "\"/></numFmts>"
+                    + "<fonts count=\"1\"><font><sz val=\"11\"/><name val=\"Calibri\"/></font></fonts>"
+                    + "<fills count=\"1\"><fill><patternFill patternType=\"none\"/></fill></fills>"
+                    + "<borders count=\"1\"><border/></borders>"
+                    + "<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>"
+                    + "<cellXfs count=\"2\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>"
+                    + "<xf numFmtId=\"164\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyNumberFormat=\"1\"/></cellXfs>"
+                    + "</styleSheet>");
+
+            //Shared strings are the headings, then "value 0" to "value n"
+            zip.putNextEntry(new ZipEntry("xl/sharedStrings.xml"));
+            out.write(XML_DECLARATION);
+            out.write("<sst xmlns=\"" + SPREADSHEET + "\" uniqueCount=\"" + (columns + stringCardinality) + "\">");
+            final CellValues cells = new CellValues();
+            for (int column = 0; column < columns; column++) {
+                out.write("<si><t>" + cells.getHeading(column) + "</t></si>");
+            }
+            for (int value = 0; value < stringCardinality; value++) {
+                out.write("<si><t>value " + value + "</t></si>");
+            }
+            out.write("</sst>");
+            out.flush();
+            zip.closeEntry();
+
+            zip.putNextEntry(new ZipEntry("xl/worksheets/sheet1.xml"));
+            out.write(XML_DECLARATION);
+            out.write("<worksheet xmlns=\"" + SPREADSHEET + "\"><sheetData>");
+            out.write("<row r=\"1\">");
+            for (int column = 0; column < columns; column++) {
+                out.write("<c r=\"" + cells.getReference(column, 0) + "\" t=\"s\"><v>" + column + "</v></c>");
+            }
+            out.write("</row>");
+            for (int rowIndex = 1; rowIndex <= rows; rowIndex++) {
+                cells.nextRow(rowIndex);
+                out.write("<row r=\"" + (rowIndex + 1) + "\">");
+                for (int column = 0; column < columns; column++) {
+                    final String ref = cells.getReference(column, rowIndex);
+                    final Object value = cells.values[column];
+                    if (cells.formulas[column] != null) {
+                        out.write("<c r=\"" + ref + "\"><f>" + cells.formulas[column] + "</f><v>" + value + "</v></c>");
+                    } else if (value instanceof String) {
+                        out.write("<c r=\"" + ref + "\" t=\"s\"><v>" + (columns + cells.stringIndexes[column]) + "</v></c>");
+                    } else if (value instanceof Double) {
+                        out.write("<c r=\"" + ref + "\"><v>" + value + "</v></c>");
+                    } else if (value instanceof Date) {
+                        out.write("<c r=\"" + ref + "\" s=\"1\"><v>" + DateUtil.getExcelDate((Date) value) + "</v></c>");
+                    } else {
+                        out.write("<c r=\"" + ref + "\" t=\"b\"><v>" + (((Boolean) value) ? 1 : 0) + "</v></c>");
+                    }
+                }
+                out.write("</row>");
+            }
+            out.write("</sheetData></worksheet>");
+            out.flush();
+            zip.closeEntry();
+        } finally {
+            zip.close();
+        }
+    }
+
+    private static void writePart(ZipOutputStream zip, Writer out, String name, String xml) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        out.write(XML_DECLARATION);
+        out.write(xml);
+        out.flush();
+        zip.closeEntry();
+    }
+
+    /**
+     * The cell values of the sheet, generated one row at a time so both
+     * writers produce the same cells for the same seed
+     */
+    private class CellValues {
+
+        private final Random random;
+        private final ExcelType[] types;
+        private final long now;
+        /**
+         * Values of the current row, the cached result for formula cells
+         */
+        final Object[] values;
+        /**
+         * Formulas of the current row, null for cells without one
+         */
+        final String[] formulas;
+        /**
+         * Index of the value of each string cell of the current row
+         */
+        final int[] stringIndexes;
+
+        CellValues() {
+            this.random = new Random(seed);
+            this.types = new ExcelType[columns];
+            for (int column = 0; column < columns; column++) {
+                types[column] = chooseType(random);
+            }
+            this.now = System.currentTimeMillis();
+            this.values = new Object[columns];
+            this.formulas = new String[columns];
+            this.stringIndexes = new int[columns];
+        }
+
+        String getHeading(int column) {
+            return types[column].name().toLowerCase() + column;
+        }
+
+        String getReference(int column, int rowIndex) {
+            return CellReference.convertNumToColString(column) + (rowIndex + 1);
+        }
+
+        void nextRow(int rowIndex) {
+            int lastNumericColumn = -1;
+            for (int column = 0; column < columns; column++) {
+                formulas[column] = null;
+                switch (types[column]) {
+                    case STRING:
+                        stringIndexes[column] = random.nextInt(stringCardinality);
+                        values[column] = "value " + stringIndexes[column];
+                        break;
+                    case NUMERIC:
+                        if (rowIndex > 1 && random.nextDouble() < formulaDensity) {
+                            //Reference an earlier numeric cell so the evaluator has work to do
+                            final double operand;
+                            final String operandText;
+                            if (lastNumericColumn < 0) {
+                                operand = random.nextInt(1000);
+                                operandText = String.valueOf((int) operand);
+                            } else {
+                                operand = (Double) values[lastNumericColumn];
+                                operandText = getReference(lastNumericColumn, rowIndex);
+                            }
+                            final int addend = random.nextInt(100);
+                            formulas[column] = operandText + "*2+" + addend;
+                            values[column] = operand * 2 + addend;
+                        } else {
+                            values[column] = random.nextDouble() * 1000000;
+                        }
+                        lastNumericColumn = column;
+                        break;
+                    case DATE:
+                        values[column] = new Date(now - (long) (random.nextDouble() * 315360000000L));
+                        break;
+                    case BOOLEAN:
+                        values[column] = random.nextBoolean();
+                        break;
+                }
+            }
+        }
+    }
+
+    private ExcelType chooseType(Random random) {
+        final int total = typeWeights[0] + typeWeights[1] + typeWeights[2] + typeWeights[3];
+        int choice = random.nextInt(total);
+        for (int type = 0; type < typeWeights.length; type++) {
+            if (choice < typeWeights[type]) {
+                return WEIGHTED_TYPES[type];
+            }
+            choice -= typeWeights[type];
+        }
+        return ExcelType.STRING;
+    }
+
+    @Override
+    public String toString() {
+        return (xlsx ? "xlsx" : "xls") + " rows=" + rows + " columns=" + columns
+                + " types=" + typeWeights[0] + ":" + typeWeights[1] + ":" + typeWeights[2] + ":" + typeWeights[3]
+                + " formulas=" + formulaDensity + " strings=" + stringCardinality;
+    }
+}